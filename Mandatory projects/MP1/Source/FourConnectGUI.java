@@ -19,6 +19,9 @@ public class FourConnectGUI extends JComponent implements MouseListener
     private IGameLogic.Winner winner;
     private int playerTurn;
     private int[][] gameBoard;
+    private boolean thinking;	// Whether a computer player is deciding its move in the background.
+
+    static final long MOVE_TIME = 10000;	// Time in ms a computer player gets per move.
 
     // Images for drawing the game board
     private Image 		part, redPion, bluePion, arrow, arrow_active, background;
@@ -137,7 +140,7 @@ public class FourConnectGUI extends JComponent implements MouseListener
      * player is prompted to make a move, which is done in a new thread.
      */
     public void mouseClicked(MouseEvent e){
-	if (winner == IGameLogic.Winner.NOT_FINISHED){
+	if (winner == IGameLogic.Winner.NOT_FINISHED && !thinking){
 	    int col=-1;
 	    if (playerTurn == 1) {
             if (player1==null){//human
@@ -149,19 +152,7 @@ public class FourConnectGUI extends JComponent implements MouseListener
                 }
             }
             else{//computer
-                col = player1.decideNextMove();
-                if (updateBoard(col,1)){
-                    if (player2!=null) player2.insertCoin(col,1);
-                    player1.insertCoin(col,1);
-                    winner = player1.gameFinished();
-                    playerTurn = 2;
-                }
-                else{
-                    JOptionPane.showMessageDialog(this, 
-                                  "Player1 chose an invalid move, please debug!", 
-                                  "Invalid Move",
-                                  JOptionPane.ERROR_MESSAGE); 
-                }		
+                startComputerMove(player1, player2, 1);
             }
 	    } else{
             if (player2==null){//human
@@ -173,25 +164,49 @@ public class FourConnectGUI extends JComponent implements MouseListener
                 }
             }
             else{//computer
-                col = player2.decideNextMove();
-                if (updateBoard(col,2)){
-                if (player1!=null) player1.insertCoin(col,2);
-                player2.insertCoin(col,2);
-                winner = player2.gameFinished();
-                playerTurn = 1;
-                }
-                else{
-                JOptionPane.showMessageDialog(this,
-                                  "Player2 chose an invalid move, please debug!", 
-                                  "Invalid Move",
-                                  JOptionPane.ERROR_MESSAGE); 
-                }		
+                startComputerMove(player2, player1, 2);
             }
 	    }
 	}
 	repaint();
     }
 		
+
+    /*
+     * Lets the computer player decide its move in the background, so the GUI stays responsive,
+     * and plays the move on the event thread once it is decided. The arrow shows the best move so far.
+     */
+    private void startComputerMove(final IGameLogic logic, final IGameLogic other, final int player){
+	thinking = true;
+	long deadline = System.nanoTime() + MOVE_TIME * 1000000;
+
+	logic.decideNextMoveAsync(deadline, (column, depth) ->
+		SwingUtilities.invokeLater(() -> {
+		    chosenColumn = column;
+		    repaint();
+		}))
+	    .whenComplete((col, error) -> SwingUtilities.invokeLater(() -> {
+		thinking = false;
+		finishComputerMove(logic, other, error == null ? col : -1, player);
+	    }));
+    }
+
+    private void finishComputerMove(IGameLogic logic, IGameLogic other, int col, int player){
+	if (updateBoard(col,player)){
+	    if (other!=null) other.insertCoin(col,player);
+	    logic.insertCoin(col,player);
+	    winner = logic.gameFinished();
+	    playerTurn = 3 - player;
+	}
+	else{
+	    JOptionPane.showMessageDialog(this,
+					  "Player" + player + " chose an invalid move, please debug!",
+					  "Invalid Move",
+					  JOptionPane.ERROR_MESSAGE);
+	}
+	repaint();
+    }
+
     // Not used methods from the interface of MouseListener 
     public void mouseEntered(MouseEvent e){}
     public void mouseExited(MouseEvent e){}
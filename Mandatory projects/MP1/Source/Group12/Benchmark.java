@@ -0,0 +1,70 @@
+package Group12;
+
+public class Benchmark {
+    // Move sequences (columns, starting with blue) leading to canonical 7x6 positions
+    static final String[] POSITIONS = {
+        "33443",
+        "3432524",
+        "225324",
+        "42312210",
+        "0222302341",
+    };
+
+    /**
+     * Arguments are an optional parallelism (LAZY_SMP or YOUNG_BROTHERS_WAIT) followed by the thread counts
+     * to measure, e.g. "YOUNG_BROTHERS_WAIT 1 2 4 8 16". Defaults to a single thread.
+     */
+    public static void main(String[] args) {
+        GameBoard.Parallelism parallelism = GameBoard.Parallelism.LAZY_SMP;
+        int first = 0;
+        if (args.length > 0 && !Character.isDigit(args[0].charAt(0))) {
+            parallelism = GameBoard.Parallelism.valueOf(args[0]);
+            first = 1;
+        }
+
+        int[] threadCounts = { 1 };
+        if (args.length > first) {
+            threadCounts = new int[args.length - first];
+            for (int i = first; i < args.length; i++) {
+                threadCounts[i - first] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int threads : threadCounts) {
+            run(parallelism, threads);
+        }
+    }
+
+    private static void run(GameBoard.Parallelism parallelism, int threads) {
+        int width = 7;
+        int height = 6;
+
+        float totalNodes = 0;
+        float totalSeconds = 0;
+        int totalDepth = 0;
+
+        for (String position : POSITIONS) {
+            int player = position.length() % 2 == 0 ? 1 : 2;
+            GameBoard board = new GameBoard(width, height, player);
+            board.setThreads(threads);
+            board.setParallelism(parallelism);
+
+            for (int i = 0; i < position.length(); i++) {
+                board.insertCoin(position.charAt(i) - '0', i % 2 == 0 ? 1 : 2);
+            }
+
+            board.decideNextMove();
+            GameBoard.Statistics statistics = board.getStatistics();
+
+            totalNodes += statistics.mnodes;
+            totalSeconds += statistics.elapsed / 1000f;
+            totalDepth += statistics.depth;
+
+            System.out.println(String.format("THREADS %2d  POSITION %-12s DEPTH %2d  %6.2f Mnodes/sec",
+                    threads, position, statistics.depth, statistics.mnodesPerSec));
+        }
+
+        System.out.println(String.format("THREADS %2d  AVERAGE               DEPTH %4.1f  %6.2f Mnodes/sec",
+                threads, (float) totalDepth / POSITIONS.length, totalNodes / totalSeconds));
+    }
+}
@@ -0,0 +1,66 @@
+package Group12;
+
+import Group12.GameBoard.Winner;
+
+/**
+ * Position the search plays on, seen from the player the engine plays for. Position keeps the board in single
+ * long bitboards and LargePosition in several longs for boards with more cells than fit in one. The board size
+ * decides which one a game uses, so the search only ever meets one of them per size.
+ */
+public interface Board {
+    /**
+     * Creates an empty board of the given size for the player.
+     */
+    static Board create(int width, int height, byte player) {
+        if (Masks.fits(width, height))
+            return new Position(width, height, player);
+
+        return new LargePosition(width, height, player);
+    }
+
+    int getWidth();
+
+    int getHeight();
+
+    int getMaxMoves();
+
+    byte getPlayer();
+
+    long getHash();
+
+    long getMirrorHash();
+
+    /**
+     * Heuristic score of the board from the point of view of the player.
+     */
+    int getScore();
+
+    int getMoves();
+
+    byte getCoinToMove();
+
+    Winner getWinner();
+
+    boolean isTerminal();
+
+    int getColumnHeight(int column);
+
+    boolean isFull(int column);
+
+    byte getCoin(int column, int row);
+
+    void addCoin(int column, byte coin);
+
+    void removeCoin(int column);
+
+    /**
+     * Whether the board is its own mirror image, so a column and its mirror lead to mirrored positions that are
+     * worth the same.
+     */
+    boolean isSymmetric();
+
+    /**
+     * Copies the board, sharing the precomputed tables.
+     */
+    Board copy();
+}
@@ -0,0 +1,163 @@
+package Group12;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Opening book, memory-mapped from a file written by BookGenerator. The file holds a header followed by records
+ * of (key, column, flags, score) sorted by key, so a lookup is a binary search over the mapped file without
+ * reading it into the heap first. Keys do not depend on the colour the engine plays and mirrored positions share
+ * a record, stored in the orientation with the smaller key.
+ */
+public class Book {
+    public static final int MAGIC = 0x43344243;
+
+    public static final int HEADER_BYTES = 20;
+    public static final int RECORD_BYTES = 12;
+
+    // Flags of a record, the score is the solver's score if it is exact and the search's otherwise
+    public static final int SEARCHED = 0;
+    public static final int SOLVED = 1;
+
+    // Returned by lookupScore for positions without an exact score
+    public static final int NO_SCORE = Integer.MIN_VALUE;
+
+    private static final String DIRECTORY = "books";
+
+    private final int width;
+    private final int plies;
+    private final int count;
+
+    private final Zobrist zobrist;
+    private final MappedByteBuffer buffer;
+
+    private Book(int width, int height, MappedByteBuffer buffer) {
+        this.width = width;
+        this.buffer = buffer;
+
+        if (buffer.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("Not an opening book");
+
+        if (buffer.getInt(4) != width || buffer.getInt(8) != height)
+            throw new IllegalArgumentException("Opening book is for " + buffer.getInt(4) + "x" + buffer.getInt(8) +
+                    " and not for " + width + "x" + height);
+
+        this.plies = buffer.getInt(12);
+        this.count = buffer.getInt(16);
+
+        this.zobrist = Zobrist.forSize(width, height);
+    }
+
+    public static Path path(int width, int height) {
+        return Paths.get(DIRECTORY, width + "x" + height + ".book");
+    }
+
+    /**
+     * Maps the book for the board size from the books directory, or returns null if there is none.
+     */
+    public static Book load(int width, int height) {
+        Path path = path(width, height);
+        if (!Files.isRegularFile(path))
+            return null;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return new Book(width, height, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not map the opening book " + path, e);
+        }
+    }
+
+    /**
+     * Positions with fewer coins than this are in the book.
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the book column for the coin to move, or -1 if the position is not in the book.
+     */
+    public int lookup(Position position) {
+        if (position.getMoves() >= plies || position.isTerminal())
+            return -1;
+
+        long hash = hash(zobrist, position, false);
+        long mirrorHash = hash(zobrist, position, true);
+        boolean mirrored = mirrorHash < hash;
+
+        int record = find(mirrored ? mirrorHash : hash);
+        if (record == -1)
+            return -1;
+
+        int column = buffer.get(HEADER_BYTES + record * RECORD_BYTES + 8);
+        return mirrored ? width - column - 1 : column;
+    }
+
+    /**
+     * Returns the exact score of the position for the coin to move, as the solver scores it, or NO_SCORE if the
+     * book does not hold one. Books written by DatabaseGenerator hold one for every position.
+     */
+    public int lookupScore(Position position) {
+        if (position.getMoves() >= plies || position.isTerminal())
+            return NO_SCORE;
+
+        long hash = hash(zobrist, position, false);
+        long mirrorHash = hash(zobrist, position, true);
+
+        int record = find(Math.min(hash, mirrorHash));
+        if (record == -1)
+            return NO_SCORE;
+
+        int offset = HEADER_BYTES + record * RECORD_BYTES;
+        if (buffer.get(offset + 9) != SOLVED)
+            return NO_SCORE;
+
+        return buffer.getShort(offset + 10);
+    }
+
+    private int find(long key) {
+        int low = 0;
+        int high = count - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = buffer.getLong(HEADER_BYTES + middle * RECORD_BYTES);
+
+            if (middleKey < key) low = middle + 1;
+            else if (middleKey > key) high = middle - 1;
+            else return middle;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Zobrist hash of the position by colour rather than by the engine's side, optionally of the mirrored board.
+     */
+    static long hash(Zobrist zobrist, Position position, boolean mirror) {
+        long hash = 0;
+
+        for (int column = 0; column < position.getWidth(); column++) {
+            for (int row = 0; row < position.getHeight(); row++) {
+                byte coin = position.getCoin(column, row);
+                if (coin == GameBoard.Coin.NONE)
+                    break;
+
+                int side = coin == GameBoard.Coin.BLUE ? 0 : 1;
+                hash ^= mirror ? zobrist.mirrorKey(side, column, row) : zobrist.key(side, column, row);
+            }
+        }
+
+        return hash;
+    }
+}
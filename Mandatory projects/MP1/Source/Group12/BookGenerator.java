@@ -0,0 +1,192 @@
+package Group12;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+public class BookGenerator {
+    private static final int CACHE_MEGABYTES = 128;
+
+    private final int width, height;
+    private final int depth;
+    private final long solveMillis;
+
+    private final Zobrist zobrist;
+    private final TranspositionTable cache;
+    private final Solver solver;
+
+    public BookGenerator(int width, int height, int depth, long solveMillis) {
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.solveMillis = solveMillis;
+
+        this.zobrist = new Zobrist(width, height);
+        this.cache = new TranspositionTable(CACHE_MEGABYTES);
+        this.solver = new Solver(new Masks(width, height), width, height, CACHE_MEGABYTES);
+    }
+
+    /**
+     * Arguments are the width and height of the board, the number of plies to put in the book and the depth to
+     * search positions to, optionally followed by the time in ms the solver gets per position before the search
+     * is used instead, e.g. "7 6 8 14 1000". The book is written to the books directory.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Usage: BookGenerator width height plies depth [solveMillis]");
+            return;
+        }
+
+        int width = Integer.parseInt(args[0]);
+        int height = Integer.parseInt(args[1]);
+        int plies = Integer.parseInt(args[2]);
+        int depth = Integer.parseInt(args[3]);
+        long solveMillis = args.length > 4 ? Long.parseLong(args[4]) : 0;
+
+        Path path = Book.path(width, height);
+        new BookGenerator(width, height, depth, solveMillis).generate(plies, path);
+
+        System.out.println("Wrote " + path);
+    }
+
+    /**
+     * Evaluates every position with fewer coins than plies, mirrored positions only once, and writes the book.
+     */
+    public void generate(int plies, Path path) throws IOException {
+        HashMap<Long, Integer> records = new HashMap<>();
+        Stopwatch stopwatch = new Stopwatch();
+
+        // Move sequences leading to the positions of the current ply, one per position up to mirroring
+        List<String> current = new ArrayList<>();
+        current.add("");
+
+        for (int ply = 0; ply < plies && !current.isEmpty(); ply++) {
+            List<String> next = new ArrayList<>();
+            HashSet<Long> seen = new HashSet<>();
+
+            for (String moves : current) {
+                Position position = replay(moves);
+
+                long hash = Book.hash(zobrist, position, false);
+                long mirrorHash = Book.hash(zobrist, position, true);
+                records.put(Math.min(hash, mirrorHash), evaluate(position, mirrorHash < hash));
+
+                if (ply + 1 == plies)
+                    continue;
+
+                for (int column = 0; column < width; column++) {
+                    if (position.isFull(column))
+                        continue;
+
+                    position.addCoin(column, position.getCoinToMove());
+
+                    // Finished games need no book move
+                    long key = Math.min(Book.hash(zobrist, position, false), Book.hash(zobrist, position, true));
+                    if (!position.isTerminal() && seen.add(key))
+                        next.add(moves + (char) ('0' + column));
+
+                    position.removeCoin(column);
+                }
+            }
+
+            System.out.println(String.format("PLY %2d  POSITIONS %8d  ELAPSED %6d s", ply, current.size(),
+                    stopwatch.elapsed() / 1000));
+            current = next;
+        }
+
+        write(records, plies, path);
+    }
+
+    /**
+     * Returns the record of the position for the coin to move: the best column in the orientation of the key in
+     * the lowest byte, then the flags and the score.
+     */
+    private int evaluate(Position position, boolean mirrored) {
+        int column = -1;
+        int flags = Book.SEARCHED;
+        int score = 0;
+
+        // Solve the position if the solver manages in time, otherwise search it to the fixed depth
+        if (solveMillis > 0) {
+            long mask = position.getPlayerBoard() | position.getOpponentBoard();
+            column = solver.bestColumn(position.getPlayerBoard(), mask, position.getMoves(),
+                    new Deadline(System.nanoTime() + solveMillis * 1000000));
+
+            if (column != -1) {
+                flags = Book.SOLVED;
+                score = solver.getScore();
+            }
+        }
+
+        if (column == -1) {
+            cache.newSearch();
+
+            Search search = new Search(position, cache);
+            int[] columns = Search.middleOut(width);
+            int[] results = new int[width];
+
+            for (int d = 1; d <= depth; d++) {
+                column = search.searchRoot(columns, d, results, -Search.INFINITY, Search.INFINITY);
+                if (Search.isWin(results[column]) || Search.isLoss(results[column]))
+                    break;
+
+                columns = Search.orderColumns(results);
+            }
+
+            score = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, results[column]));
+        }
+
+        if (mirrored)
+            column = width - column - 1;
+
+        return column | flags << 8 | score << 16;
+    }
+
+    private Position replay(String moves) {
+        // The position is seen from the coin to move, which is the one the search plays for
+        byte player = moves.length() % 2 == 0 ? GameBoard.Coin.BLUE : GameBoard.Coin.RED;
+        Position position = new Position(width, height, player);
+
+        for (int i = 0; i < moves.length(); i++) {
+            position.addCoin(moves.charAt(i) - '0', position.getCoinToMove());
+        }
+
+        return position;
+    }
+
+    private void write(HashMap<Long, Integer> records, int plies, Path path) throws IOException {
+        long[] keys = new long[records.size()];
+        int i = 0;
+        for (long key : records.keySet()) {
+            keys[i++] = key;
+        }
+        Arrays.sort(keys);
+
+        if (path.getParent() != null)
+            Files.createDirectories(path.getParent());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(Book.MAGIC);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(plies);
+            out.writeInt(keys.length);
+
+            for (long key : keys) {
+                int record = records.get(key);
+
+                out.writeLong(key);
+                out.writeByte(record & 0xFF);
+                out.writeByte(record >> 8 & 0xFF);
+                out.writeShort(record >> 16);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package Group12;
+
+/**
+ * Predicts the duration of the next iteration from the effective branching factor measured on the previous ones,
+ * and spends a per move share plus part of a time bank. Moves that take less than their share add the rest to
+ * the bank, moves that take more draw from it.
+ */
+public class BranchingTimeManager implements TimeManager {
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    // Branching factor assumed until two iterations have been measured, and the bounds of measured ones
+    private static final double DEFAULT_BRANCHING = 3.0;
+    private static final double MIN_BRANCHING = 1.2;
+    private static final double MAX_BRANCHING = 8.0;
+
+    // Part of the move limit kept in reserve to return the move in time, at least MIN_RESERVE but at most half
+    private static final double SAFETY = 0.05;
+    private static final long MIN_RESERVE = 20 * NANOS_PER_MILLI;
+
+    // Most of the move limit a move plans to use, well before the deadline so an iteration that takes longer than
+    // predicted still ends in time
+    private static final double MAX_BUDGET = 0.7;
+
+    // Part of the next iteration that has to fit in the budget. An iteration cut short at the deadline still
+    // counts once its first column, which takes most of its time, is done
+    private static final double REQUIRED_PART = 0.3;
+
+    private final long moveLimit;
+    private final long moveShare;
+    private final long bankLimit;
+    private final int bankDivisor;
+
+    private long bank;
+
+    private long start;
+    private long budget;
+    private long lastIteration;
+    private double branching;
+
+    /**
+     * Creates a manager for a hard limit per move in ms, the share of it a move normally gets and the most time
+     * the bank can hold, which it starts with. A move may spend a bankDivisor'th part of the bank on top of its
+     * share.
+     */
+    public BranchingTimeManager(long moveLimitMillis, long moveShareMillis, long bankMillis, int bankDivisor) {
+        this.moveLimit = moveLimitMillis * NANOS_PER_MILLI;
+        this.moveShare = moveShareMillis * NANOS_PER_MILLI;
+        this.bankLimit = bankMillis * NANOS_PER_MILLI;
+        this.bankDivisor = bankDivisor;
+
+        this.bank = bankLimit;
+    }
+
+    public void newGame() {
+        bank = bankLimit;
+    }
+
+    public void startMove(long start, int moves, int maxMoves) {
+        this.start = start;
+        this.lastIteration = 0;
+        this.branching = DEFAULT_BRANCHING;
+
+        long usable = (long) (moveLimit * MAX_BUDGET);
+        budget = Math.min(usable, moveShare + bank / bankDivisor);
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public long getDeadline() {
+        long reserve = Math.min(moveLimit / 2, Math.max(MIN_RESERVE, (long) (moveLimit * SAFETY)));
+        return start + moveLimit - reserve;
+    }
+
+    public boolean shouldDeepen(long iteration, long elapsed) {
+        if (lastIteration > 0) {
+            double measured = (double) iteration / lastIteration;
+            branching = Math.max(MIN_BRANCHING, Math.min(MAX_BRANCHING, measured));
+        }
+        lastIteration = Math.max(1, iteration);
+
+        return elapsed + iteration * branching * REQUIRED_PART <= budget;
+    }
+
+    public void endMove(long elapsed) {
+        bank = Math.max(0, Math.min(bankLimit, bank + moveShare - elapsed));
+    }
+}
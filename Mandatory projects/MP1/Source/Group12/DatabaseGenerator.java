@@ -0,0 +1,521 @@
+package Group12;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Solves every reachable position of a small board by retrograde analysis and writes them all as a book, so
+ * GameBoard plays those sizes perfectly by looking moves up. Positions are enumerated forward ply by ply and
+ * spilled to disk, then valued backwards from the last ply, each ply from the values of the next one.
+ *
+ * While it works, positions are identified exactly by the key of the side to move's coins plus the mask of all
+ * coins, which has one bit more per column than coins in it, and mirrored positions by the smaller of the two
+ * keys. The book written at the end is keyed by Zobrist hashes like any other book, with exact scores.
+ */
+public class DatabaseGenerator {
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final int width, height;
+    private final int maxMoves;
+    private final int columnBits;
+    private final long columnMask;
+
+    private final Masks masks;
+    private final Zobrist zobrist;
+
+    private final long[] bottomMasks;
+    private final long[] topMasks;
+    private final long[] columnMasks;
+    private final int[] columnOrder;
+
+    private final ExecutorService pool;
+    private final int chunks;
+
+    public DatabaseGenerator(int width, int height, int threads) {
+        this.width = width;
+        this.height = height;
+        this.maxMoves = width * height;
+        this.columnBits = height + 1;
+        this.columnMask = (1L << columnBits) - 1;
+
+        this.masks = new Masks(width, height);
+        this.zobrist = new Zobrist(width, height);
+
+        bottomMasks = new long[width];
+        topMasks = new long[width];
+        columnMasks = new long[width];
+        for (int column = 0; column < width; column++) {
+            bottomMasks[column] = masks.getCoinMask(column, 0);
+            topMasks[column] = masks.getCoinMask(column, height - 1);
+            columnMasks[column] = masks.getLineMask(column, 0, 1, 0, height);
+        }
+        columnOrder = Search.middleOut(width);
+
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.chunks = threads * CHUNKS_PER_THREAD;
+    }
+
+    /**
+     * Arguments are the width and height of the board, optionally followed by the number of threads and the
+     * number of random positions to check against the solver afterwards, e.g. "5 4 8 1000". The database is
+     * written to the books directory, where GameBoard finds it.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: DatabaseGenerator width height [threads] [verifySamples]");
+            return;
+        }
+
+        int width = Integer.parseInt(args[0]);
+        int height = Integer.parseInt(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int samples = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        Path path = Book.path(width, height);
+        DatabaseGenerator generator = new DatabaseGenerator(width, height, threads);
+        try {
+            generator.generate(path);
+        } finally {
+            generator.pool.shutdown();
+        }
+        System.out.println("Wrote " + path);
+
+        if (samples > 0)
+            generator.verify(Book.load(width, height), samples);
+    }
+
+    /**
+     * Solves all positions and writes the book. The positions of each ply are kept in a temporary directory
+     * until the book is written.
+     */
+    public void generate(Path path) throws IOException {
+        Stopwatch stopwatch = new Stopwatch();
+        Path directory = Files.createTempDirectory("group12-database");
+
+        try {
+            // Forward: the positions of every ply that are not decided yet, sorted
+            long[] counts = new long[maxMoves];
+            long[] current = { 0 };
+            int plies = 0;
+
+            while (plies < maxMoves && current.length > 0) {
+                writeKeys(keysPath(directory, plies), current);
+                counts[plies] = current.length;
+
+                System.out.println(String.format("PLY %2d  POSITIONS %10d  ELAPSED %6d s", plies, current.length,
+                        stopwatch.elapsed() / 1000));
+
+                current = expand(current, plies);
+                plies++;
+            }
+
+            // Backward: every position gets its best column and score from the values of the next ply
+            for (int ply = plies - 1; ply >= 0; ply--) {
+                value(directory, ply, ply + 1 < plies);
+            }
+            System.out.println(String.format("VALUED ALL PLIES  ELAPSED %6d s", stopwatch.elapsed() / 1000));
+
+            write(directory, counts, plies, path);
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Returns the sorted positions of the next ply that are not decided yet, reached from those of the ply.
+     */
+    private long[] expand(long[] keys, int ply) throws IOException {
+        List<long[]> parts = run(keys.length, (from, to) -> {
+            long[] children = new long[(to - from) * width];
+            int count = 0;
+
+            for (int i = from; i < to; i++) {
+                long mask = mask(keys[i]);
+                long current = keys[i] - mask;
+
+                for (int column = 0; column < width; column++) {
+                    if ((mask & topMasks[column]) != 0)
+                        continue;
+
+                    long move = (mask + bottomMasks[column]) & columnMasks[column];
+
+                    // Won and full boards end the game and need no value of their own
+                    if (masks.connectsFour(current | move) || ply + 1 == maxMoves)
+                        continue;
+
+                    children[count++] = canonical(current ^ mask, mask | move);
+                }
+            }
+
+            return Arrays.copyOf(children, count);
+        });
+
+        int total = 0;
+        for (long[] part : parts) total += part.length;
+
+        long[] children = new long[total];
+        int offset = 0;
+        for (long[] part : parts) {
+            System.arraycopy(part, 0, children, offset, part.length);
+            offset += part.length;
+        }
+
+        Arrays.parallelSort(children);
+
+        int unique = 0;
+        for (int i = 0; i < children.length; i++) {
+            if (i == 0 || children[i] != children[i - 1]) children[unique++] = children[i];
+        }
+
+        return Arrays.copyOf(children, unique);
+    }
+
+    /**
+     * Values the positions of the ply, looking up the positions after every move in the next ply's files, and
+     * writes a column and a score per position.
+     */
+    private void value(Path directory, int ply, boolean hasNext) throws IOException {
+        LongBuffer keys = mapKeys(keysPath(directory, ply));
+        LongBuffer nextKeys = hasNext ? mapKeys(keysPath(directory, ply + 1)) : null;
+        ByteBuffer nextValues = hasNext ? map(valuesPath(directory, ply + 1)) : null;
+
+        byte[] values = new byte[keys.limit() * 2];
+
+        run(keys.limit(), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                long key = keys.get(i);
+                long mask = mask(key);
+                long current = key - mask;
+
+                int bestColumn = -1;
+                int bestScore = Integer.MIN_VALUE;
+
+                for (int column : columnOrder) {
+                    if ((mask & topMasks[column]) != 0)
+                        continue;
+
+                    long move = (mask + bottomMasks[column]) & columnMasks[column];
+
+                    int score;
+                    if (masks.connectsFour(current | move)) {
+                        score = (maxMoves + 1 - ply) / 2;
+                    } else if (ply + 1 == maxMoves) {
+                        score = 0;
+                    } else {
+                        int index = find(nextKeys, canonical(current ^ mask, mask | move));
+                        if (index == -1)
+                            throw new IllegalStateException("Position missing from ply " + (ply + 1));
+
+                        score = -nextValues.get(2 * index + 1);
+                    }
+
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestColumn = column;
+                    }
+                }
+
+                values[2 * i] = (byte) bestColumn;
+                values[2 * i + 1] = (byte) bestScore;
+            }
+
+            return null;
+        });
+
+        Files.write(valuesPath(directory, ply), values);
+    }
+
+    /**
+     * Writes the positions of all plies as a book, keyed by Zobrist hash and sorted.
+     */
+    private void write(Path directory, long[] counts, int plies, Path path) throws IOException {
+        long total = 0;
+        for (int ply = 0; ply < plies; ply++) total += counts[ply];
+
+        if (total > Integer.MAX_VALUE)
+            throw new IllegalStateException("Too many positions for a book: " + total);
+
+        long[] bookKeys = new long[(int) total];
+        int[] records = new int[(int) total];
+        int offset = 0;
+
+        for (int ply = 0; ply < plies; ply++) {
+            LongBuffer keys = mapKeys(keysPath(directory, ply));
+            ByteBuffer values = map(valuesPath(directory, ply));
+            int start = offset;
+            int p = ply;
+
+            run(keys.limit(), (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    long key = keys.get(i);
+                    int column = values.get(2 * i);
+                    int score = values.get(2 * i + 1);
+
+                    // The book keeps the record in the orientation with the smaller hash
+                    long hash = hash(key, p, false);
+                    long mirrorHash = hash(key, p, true);
+                    if (mirrorHash < hash) {
+                        hash = mirrorHash;
+                        column = width - column - 1;
+                    }
+
+                    bookKeys[start + i] = hash;
+                    records[start + i] = column | Book.SOLVED << 8 | (score & 0xFFFF) << 16;
+                }
+                return null;
+            });
+
+            offset += keys.limit();
+        }
+
+        sort(bookKeys, records);
+
+        if (path.getParent() != null)
+            Files.createDirectories(path.getParent());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(Book.MAGIC);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(maxMoves);
+            out.writeInt(bookKeys.length);
+
+            for (int i = 0; i < bookKeys.length; i++) {
+                out.writeLong(bookKeys[i]);
+                out.writeByte(records[i] & 0xFF);
+                out.writeByte(records[i] >> 8 & 0xFF);
+                out.writeShort(records[i] >> 16);
+            }
+        }
+    }
+
+    /**
+     * Compares the scores of the book with those of the solver for random positions.
+     */
+    public void verify(Book book, int samples) {
+        Solver solver = new Solver(masks, width, height, 64);
+        Random random = new Random(samples);
+        int mismatches = 0;
+
+        for (int i = 0; i < samples; i++) {
+            Position position = new Position(width, height, GameBoard.Coin.BLUE);
+            int plies = random.nextInt(maxMoves);
+
+            while (position.getMoves() < plies) {
+                int column = random.nextInt(width);
+                if (position.isFull(column))
+                    continue;
+
+                position.addCoin(column, position.getCoinToMove());
+                if (position.isTerminal())
+                    position.removeCoin(column);
+                if (position.getMoves() < plies && noMoves(position))
+                    break;
+            }
+
+            // The position is seen from blue, so the side to move has the player's coins on even plies
+            long mask = position.getPlayerBoard() | position.getOpponentBoard();
+            long current = position.getMoves() % 2 == 0 ? position.getPlayerBoard() : position.getOpponentBoard();
+
+            int expected = solver.solve(current, mask, position.getMoves(), false);
+            int score = book.lookupScore(position);
+            if (score != expected) {
+                mismatches++;
+                System.out.println("MISMATCH  PLY " + position.getMoves() + "  BOOK " + score + "  SOLVER " + expected);
+            }
+        }
+
+        System.out.println(String.format("VERIFIED %d POSITIONS  MISMATCHES %d", samples, mismatches));
+    }
+
+    private boolean noMoves(Position position) {
+        // Every move left ends the game, so the position can not be played any further
+        for (int column = 0; column < width; column++) {
+            if (position.isFull(column))
+                continue;
+
+            position.addCoin(column, position.getCoinToMove());
+            boolean terminal = position.isTerminal();
+            position.removeCoin(column);
+
+            if (!terminal)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Mask of all coins of a key: the key holds one more than the mask in every column, so the mask ends below
+     * the highest bit of the column.
+     */
+    private long mask(long key) {
+        long mask = 0;
+        for (int column = 0; column < width; column++) {
+            long bits = (key >>> column * columnBits) & columnMask;
+            int coins = 63 - Long.numberOfLeadingZeros(bits + 1);
+            mask |= ((1L << coins) - 1) << column * columnBits;
+        }
+
+        return mask;
+    }
+
+    private long canonical(long current, long mask) {
+        long key = current + mask;
+        return Math.min(key, masks.mirror(key));
+    }
+
+    /**
+     * Zobrist hash of the position of the key by colour, as Book computes it.
+     */
+    private long hash(long key, int ply, boolean mirror) {
+        long mask = mask(key);
+        long current = key - mask;
+
+        // Blue is to move on even plies
+        int currentSide = ply % 2 == 0 ? 0 : 1;
+        long hash = 0;
+
+        for (int column = 0; column < width; column++) {
+            for (int row = 0; row < height; row++) {
+                long coin = masks.getCoinMask(column, row);
+                if ((mask & coin) == 0)
+                    break;
+
+                int side = (current & coin) != 0 ? currentSide : 1 - currentSide;
+                hash ^= mirror ? zobrist.mirrorKey(side, column, row) : zobrist.key(side, column, row);
+            }
+        }
+
+        return hash;
+    }
+
+    private static int find(LongBuffer keys, long key) {
+        int low = 0;
+        int high = keys.limit() - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = keys.get(middle);
+
+            if (middleKey < key) low = middle + 1;
+            else if (middleKey > key) high = middle - 1;
+            else return middle;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Sorts the keys and moves the records along with them, a byte of the key at a time.
+     */
+    private static void sort(long[] keys, int[] records) {
+        long[] keyBuffer = new long[keys.length];
+        int[] recordBuffer = new int[records.length];
+
+        for (int shift = 0; shift < 64; shift += 8) {
+            int[] offsets = new int[257];
+            for (long key : keys) {
+                offsets[bucket(key, shift) + 1]++;
+            }
+            for (int i = 0; i < 256; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            for (int i = 0; i < keys.length; i++) {
+                int j = offsets[bucket(keys[i], shift)]++;
+                keyBuffer[j] = keys[i];
+                recordBuffer[j] = records[i];
+            }
+
+            System.arraycopy(keyBuffer, 0, keys, 0, keys.length);
+            System.arraycopy(recordBuffer, 0, records, 0, records.length);
+        }
+    }
+
+    private static int bucket(long key, int shift) {
+        // The sign bit is flipped so negative keys come first, as in a signed comparison
+        return (int) ((key ^ Long.MIN_VALUE) >>> shift) & 0xFF;
+    }
+
+    private interface Chunk<T> {
+        T run(int from, int to) throws IOException;
+    }
+
+    /**
+     * Splits the range into chunks run on the pool and returns their results in order.
+     */
+    private <T> List<T> run(int count, Chunk<T> chunk) throws IOException {
+        List<Future<T>> futures = new ArrayList<>();
+        int size = Math.max(1, (count + chunks - 1) / chunks);
+
+        for (int from = 0; from < count; from += size) {
+            int start = from;
+            int end = Math.min(count, from + size);
+            futures.add(pool.submit(() -> chunk.run(start, end)));
+        }
+
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+
+        return results;
+    }
+
+    private static Path keysPath(Path directory, int ply) {
+        return directory.resolve(String.format("ply-%02d.keys", ply));
+    }
+
+    private static Path valuesPath(Path directory, int ply) {
+        return directory.resolve(String.format("ply-%02d.values", ply));
+    }
+
+    private static void writeKeys(Path path, long[] keys) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(keys.length * 8);
+        buffer.asLongBuffer().put(keys);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+    }
+
+    private static LongBuffer mapKeys(Path path) throws IOException {
+        return map(path).asLongBuffer();
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package Group12;
+
+/**
+ * Time, in System.nanoTime, at which a search has to stop. Can be moved earlier or cancelled from any thread,
+ * searches read it every few thousand nodes.
+ */
+public class Deadline {
+    private volatile long time;
+
+    // Passing the parent deadline passes this one too
+    private final Deadline parent;
+
+    public Deadline(long time) {
+        this(time, null);
+    }
+
+    public Deadline(long time, Deadline parent) {
+        this.time = time;
+        this.parent = parent;
+    }
+
+    public static Deadline never() {
+        return new Deadline(Long.MAX_VALUE);
+    }
+
+    public long get() {
+        return time;
+    }
+
+    public boolean hasPassed() {
+        return System.nanoTime() > time || (parent != null && parent.hasPassed());
+    }
+
+    /**
+     * Moves the deadline to the given time if that is earlier.
+     */
+    public synchronized void restrict(long time) {
+        if (time < this.time)
+            this.time = time;
+    }
+
+    /**
+     * Makes the deadline pass right away.
+     */
+    public synchronized void cancel() {
+        time = Long.MIN_VALUE;
+    }
+}
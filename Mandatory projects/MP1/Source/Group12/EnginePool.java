@@ -0,0 +1,73 @@
+package Group12;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Keeps the game boards of finished games so the next games reuse them instead of allocating a new cache each
+ * time. A board of the same size and player comes back with its cache intact, the positions of the last game are
+ * often met again. Otherwise the cache of the oldest idle board is cleared and handed to a new board, since the
+ * cache keys are relative to the player and only mean something on boards of one size.
+ */
+public class EnginePool {
+    private final int cacheMegabytes;
+    private final int capacity;
+
+    // Idle boards, the oldest first
+    private final ArrayDeque<GameBoard> idle = new ArrayDeque<>();
+
+    public EnginePool(int capacity) {
+        this(GameBoard.DEFAULT_CACHE_MEGABYTES, capacity);
+    }
+
+    /**
+     * Creates a pool of boards with caches of the given size, keeping at most capacity idle boards.
+     */
+    public EnginePool(int cacheMegabytes, int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("The pool has to keep at least one board");
+
+        this.cacheMegabytes = cacheMegabytes;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns an empty board for a new game, which should be released once the game is over.
+     */
+    public synchronized GameBoard acquire(int width, int height, int player) {
+        Iterator<GameBoard> boards = idle.iterator();
+        while (boards.hasNext()) {
+            GameBoard board = boards.next();
+            if (board.getWidth() == width && board.getHeight() == height && board.getPlayer() == player) {
+                boards.remove();
+                return board;
+            }
+        }
+
+        GameBoard oldest = idle.pollFirst();
+        if (oldest == null)
+            return new GameBoard(width, height, player, cacheMegabytes);
+
+        oldest.shutdown();
+        TranspositionTable cache = oldest.getCache();
+        cache.clear();
+
+        return new GameBoard(width, height, player, cache);
+    }
+
+    /**
+     * Takes back a board whose game is over. The board must not be used afterwards.
+     */
+    public synchronized void release(GameBoard board) {
+        board.newGame();
+        idle.addLast(board);
+
+        while (idle.size() > capacity) {
+            idle.pollFirst().shutdown();
+        }
+    }
+
+    public synchronized int idleCount() {
+        return idle.size();
+    }
+}
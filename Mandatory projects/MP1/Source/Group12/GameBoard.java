@@ -1,93 +1,138 @@
 package Group12;
 
 import java.lang.*;
-import java.util.AbstractMap;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 
 public class GameBoard {
     public enum Winner {
         NONE, BLUE, RED, TIE
     }
 
-    private final static int MAX_TIME = 10000;
+    /**
+     * Receives the best column after every completed iteration of a search, on the searching thread.
+     */
+    public interface ProgressListener {
+        void update(int column, int depth);
+    }
+
+    public enum Parallelism {
+        // Helper threads search the whole tree on their own and share the cache
+        LAZY_SMP,
+        // Work-stealing alpha-beta, siblings are searched in parallel once the eldest brother is done
+        YOUNG_BROTHERS_WAIT
+    }
 
-    private final int timeBufferInitial = 20000;
-    private final int timeBufferIncrement = 500;
-    private int timeBuffer = timeBufferInitial;
+    // System properties configuring the engine, all under the prefix MatchRunner uses for the ones it sets
+    public final static String MOVE_TIME_PROPERTY = "fourconnect.moveTime";
+    public final static String SEARCH_THREADS_PROPERTY = "fourconnect.searchThreads";
+    public final static String STATISTICS_PROPERTY = "fourconnect.statistics";
+    public final static String PONDER_PROPERTY = "fourconnect.ponder";
+
+    // Time per move in ms, which a match runner may lower
+    private final static int MAX_TIME = Integer.getInteger(MOVE_TIME_PROPERTY, 10000);
+    private final static int MOVE_SHARE_TIME = MAX_TIME * 2 / 5;
+    private final static int BANK_TIME = MAX_TIME * 2;
+    // Whether every move prints its statistics, off unless the game is watched or a match runs verbosely
+    private final static boolean PRINT_STATISTICS = Boolean.getBoolean(STATISTICS_PROPERTY);
+    final static int DEFAULT_CACHE_MEGABYTES = 64;
+    private final static int SPLIT_DEPTH = 6;
+    private final static int ASPIRATION_WINDOW = 20;
+    private final static int SOLVER_CACHE_MEGABYTES = 32;
 
     private final int width, height;
     private final int maxMoves;
 
-    private final HashMap<Long, Integer>[] startMoves;
+    private final Book book;
 
-    private byte state[][];
+    private Board position;
 
-    private long playerBoard;
-    private long opponentBoard;
-    private long emptyBoard;
-    private Masks masks;
+    // The same position if the board fits in a long, which the book and the solver need, null otherwise
+    private Position smallPosition;
 
     private final byte player;
-    private final byte opponent;
 
-    private Winner winner = Winner.NONE;
-    private int[] columnHeights;
-    private int moves;
+    private final TranspositionTable cache;
+    private Search search;
+
+    // Search threads, which a match runner may lower
+    private int threads = Integer.getInteger(SEARCH_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+    private Parallelism parallelism = Parallelism.LAZY_SMP;
+
+    // Lazy SMP: helper threads search the same tree and share results through the cache
+    private ExecutorService helperPool;
+    private final List<Future<?>> helperFutures = new ArrayList<>();
+
+    // Young brothers wait: the main search splits into tasks on this pool
+    private ForkJoinPool splitPool;
 
-    private int[] bestColumns;
+    // Root column orders, rotated so every helper starts from a different column
+    private final int[][] rootOrders;
 
-    private HashMap<BoardState, Float> cache;
-    private int cacheHits = 0;
-    private int cacheMisses = 0;
+    // Exact solver for the end of the game, with the model predicting how long it takes: e^(growth * empty) nodes.
+    // Its cache is allocated with the board, as an allocation that large during a move may stall it on the GC
+    private final Solver solver;
+    private double solverGrowth = 0.7;
+    private double solverNodesPerMs = 3000;
+
+    // Pondering: while the opponent thinks, a search of its replies fills the cache for our next move
+    private boolean pondering = Boolean.getBoolean(PONDER_PROPERTY);
+    private Thread ponderThread;
+    private Search ponderSearch;
+    private Deadline ponderDeadline;
+    private int ponderDepth;
+    private boolean pondered;
 
     private Stopwatch stopwatch;
+    private TimeManager timeManager = new BranchingTimeManager(MAX_TIME, MOVE_SHARE_TIME, BANK_TIME, 4);
 
-    private long searchCount = 0;
     private Statistics statistics;
+    private final Telemetry telemetry = Telemetry.get();
 
     public GameBoard(int width, int height, int player) {
+        this(width, height, player, DEFAULT_CACHE_MEGABYTES);
+    }
+
+    public GameBoard(int width, int height, int player, int cacheMegabytes) {
+        this(width, height, player, new TranspositionTable(cacheMegabytes));
+    }
+
+    /**
+     * Creates a board searching with the given cache, which may hold entries of an earlier game of the same size
+     * and player but must be cleared otherwise.
+     */
+    public GameBoard(int width, int height, int player, TranspositionTable cache) {
         this.width = width;
         this.height = height;
         this.maxMoves = width * height;
 
-        this.state = new byte[width][height];
-
-        this.masks = new Masks(width, height);
-
         this.player = player == 1 ? Coin.BLUE : Coin.RED;
-        this.opponent = player == 2 ? Coin.BLUE : Coin.RED;
 
-        this.state = new byte[width][height];
-        this.columnHeights = new int[width];
+        this.position = Board.create(width, height, this.player);
+        if (position instanceof Position)
+            this.smallPosition = (Position) position;
+
+        this.cache = cache;
+        this.search = new Search(position, cache);
+        this.solver = smallPosition == null ? null :
+                new Solver(smallPosition.getMasks(), width, height, SOLVER_CACHE_MEGABYTES);
 
-        this.bestColumns = new int[width];
+        this.rootOrders = new int[width][width];
         for (int i = 0; i < width; i++) {
-            // Middle out
-            bestColumns[width - i - 1] = i % 2 == 0 ? i/2 : width - (i+1)/2;
+            for (int column = 0; column < width; column++) {
+                rootOrders[i][column] = (column + i) % width;
+            }
         }
 
-        this.cache = new HashMap<>();
-
         this.stopwatch = new Stopwatch();
 
-        if (width == 7) {
-            startMoves = new HashMap[2];
-
-            startMoves[0] = new HashMap<>();
-            startMoves[0].put(0L, 3);
-
-            startMoves[1] = new HashMap<>();
-            startMoves[1].put(masks.getCoinMask(0, 0), 3);
-            startMoves[1].put(masks.getCoinMask(1, 0), 2);
-            startMoves[1].put(masks.getCoinMask(2, 0), 3);
-            startMoves[1].put(masks.getCoinMask(3, 0), 3);
-            startMoves[1].put(masks.getCoinMask(4, 0), 3);
-            startMoves[1].put(masks.getCoinMask(5, 0), 4);
-            startMoves[1].put(masks.getCoinMask(6, 0), 3);
-        }
-        else startMoves = null;
+        this.book = smallPosition == null ? null : Book.load(width, height);
     }
 
     public String toString() {
@@ -95,7 +140,7 @@ public class GameBoard {
 
         for (int row = height - 1; row >= 0; row--) {
             for (int column = 0; column < width; column++) {
-                byte coin = state[column][row];
+                byte coin = position.getCoin(column, row);
                 char symbol = ' ';
 
                 if (coin == Coin.BLUE)
@@ -117,308 +162,546 @@ public class GameBoard {
         return builder.toString();
     }
 
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * The player the board plays for, 1 for blue and 2 for red.
+     */
+    public int getPlayer() {
+        return player == Coin.BLUE ? 1 : 2;
+    }
+
+    TranspositionTable getCache() {
+        return cache;
+    }
+
     public Winner getWinner() {
-        return winner;
+        return position.getWinner();
     }
 
-    public void insertCoin(int column, int player) {
-        byte coin = player == 1 ? Coin.BLUE : Coin.RED;
-        addCoin(column, coin);
+    /**
+     * Empties the board for a new game against the same opponent. The cache keeps its entries, which stay valid
+     * as they are keyed by the coins on the board, and the pools keep their threads.
+     */
+    public void newGame() {
+        stopPondering();
+        ponderSearch = null;
+        pondered = false;
+
+        position = Board.create(width, height, player);
+        smallPosition = position instanceof Position ? (Position) position : null;
+
+        search = new Search(position, cache);
+        if (splitPool != null)
+            search.setParallel(splitPool, SPLIT_DEPTH);
+
+        statistics = null;
+        timeManager.newGame();
+        cache.newSearch();
     }
 
-    public int decideNextMove() {
-        timeBuffer = Math.min(timeBufferInitial, timeBuffer + timeBufferIncrement);
+    /**
+     * Returns a copy of the coins on the board, which restore can go back to.
+     */
+    public Snapshot snapshot() {
+        if (smallPosition == null)
+            throw new IllegalStateException("Snapshots need a board that fits in a long");
 
-        // Statistics
-        statistics = new Statistics();
-        stopwatch.reset();
-        searchCount = 0;
-        cacheHits = 0;
-        cacheMisses = 0;
+        return smallPosition.snapshot();
+    }
 
-        long elapsed = 0;
-        int depth = 0;
+    /**
+     * Sets the board to the coins of the snapshot. The moves played before can not be taken back afterwards.
+     */
+    public void restore(Snapshot snapshot) {
+        if (smallPosition == null)
+            throw new IllegalStateException("Snapshots need a board that fits in a long");
 
-        int bestColumn = -1;
-        float bestResult = Float.NEGATIVE_INFINITY;
+        stopPondering();
+        ponderSearch = null;
+        pondered = false;
 
-        // Use hard coded starter moves if available
-        if (startMoves != null && moves < startMoves.length) {
-            return startMoves[moves].get(opponentBoard);
-        }
+        smallPosition.restore(snapshot);
+    }
 
-        AbstractMap.SimpleEntry<Integer, Float>[] results = null;
+    /**
+     * Stops pondering and the helper threads. The board can still be used, it starts them again when needed.
+     */
+    public void shutdown() {
+        stopPondering();
+        shutdownPools();
+    }
 
-        while(depth < maxMoves - moves) {
-            bestResult = Float.NEGATIVE_INFINITY;
-            cache.clear();
+    public void insertCoin(int column, int player) {
+        stopPondering();
 
-            // Order best columns
-            if (results != null) {
-                // First order from middle out
-                Arrays.sort(results, new ResultKeyComparator());
+        byte coin = player == 1 ? Coin.BLUE : Coin.RED;
+        position.addCoin(column, coin);
 
-                // Then order from best to worst result of last iteration
-                Arrays.sort(results, new ResultValueComparator());
+        // Our own move was played, so the opponent is thinking now
+        if (pondering && coin == this.player && !position.isTerminal())
+            startPondering();
+    }
 
-                for (int i = 0; i < width; i++) {
-                    bestColumns[i] = results[i].getKey();
-                }
-            }
-            else {
-                results = new AbstractMap.SimpleEntry[width];
-            }
+    /**
+     * Lets the board search the opponent's replies while it is the opponent's turn. Off unless the system
+     * property fourconnect.ponder is set.
+     */
+    public void setPondering(boolean pondering) {
+        this.pondering = pondering;
+        if (!pondering) stopPondering();
+    }
 
-            for (int column = 0; column < width; column++) {
-                if (columnHeights[column] == height) {
-                    // This column should not be prioritized at later iterations
-                    results[column] = new AbstractMap.SimpleEntry<>(column, Float.NEGATIVE_INFINITY);
+    private void startPondering() {
+        // The cache entries of the ponder search belong to the next move's search
+        cache.newSearch();
+
+        Board ponderPosition = position.copy();
+        Search search = new Search(ponderPosition, cache);
+        Deadline deadline = new Deadline(System.nanoTime() + MAX_TIME * 1000000L);
+        search.setDeadline(deadline);
+
+        ponderSearch = search;
+        ponderDeadline = deadline;
+        ponderDepth = 0;
+        pondered = true;
+
+        ponderThread = new Thread(() -> {
+            // Every reply is searched, the most likely ones deepest thanks to the move ordering
+            int remaining = maxMoves - ponderPosition.getMoves();
+            for (int depth = 1; depth < remaining; depth++) {
+                search.negamax(-Search.INFINITY, Search.INFINITY, depth);
+                if (search.isAborted())
+                    break;
 
-                    continue;
-                }
+                ponderDepth = depth;
+            }
+        }, "Group12-ponder");
+        ponderThread.setDaemon(true);
+        ponderThread.start();
+    }
 
-                // Apply move to board
-                addCoin(column, player);
+    private void stopPondering() {
+        if (ponderThread == null)
+            return;
 
-                // Evaluate maximum
-                float result = evaluate(false, depth);
-                if (result >= bestResult) {
-                    bestResult = result;
-                    bestColumn = column;
-                }
+        ponderDeadline.cancel();
+        try {
+            ponderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
 
-                // Undo move
-                removeCoin(column);
+        ponderThread = null;
+    }
 
-                // If a winning move is possible, take it
-                if (depth == 0 && result == Float.POSITIVE_INFINITY) {
-                    return column;
-                }
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one search thread is needed");
 
-                // Save result for ordering of later iterations
-                results[column] = new AbstractMap.SimpleEntry<>(column, result);
-            }
+        this.threads = threads;
+        shutdownPools();
+    }
 
-            long delta = stopwatch.elapsed() - elapsed;
-            long left = MAX_TIME - elapsed;
-            elapsed = stopwatch.elapsed();
+    public void setParallelism(Parallelism parallelism) {
+        this.parallelism = parallelism;
+        shutdownPools();
+    }
 
-            if((float)delta * Math.pow(1.08, depth + 1 - (moves * 0.2)) >
-                    left - (timeBufferInitial * 0.75 - timeBuffer) / (maxMoves - moves))
-                break;
+    private void shutdownPools() {
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+            helperPool = null;
+        }
 
-            if (depth == 0) depth = 7;
-            else depth++;
+        if (splitPool != null) {
+            splitPool.shutdownNow();
+            splitPool = null;
         }
 
-        if(bestResult == Float.NEGATIVE_INFINITY)
-            System.out.println("No non-losing move available");
+        search.setParallel(null, 0);
+    }
 
-        // Statistics
-        statistics.column       = bestColumn;
-        statistics.depth        = depth;
-        statistics.elapsed      = stopwatch.elapsed();
-        statistics.mnodes       = searchCount / 1000000f;
-        statistics.mnodesPerSec = (float)searchCount / ((float)stopwatch.elapsed() / 1000f) / 1000000f;
-        statistics.cacheSize    = cache.size();
-        statistics.cacheHits    = cacheHits;
-        statistics.cacheMisses  = cacheMisses;
-        System.out.println(statistics);
-        System.out.println();
+    public void setTimeManager(TimeManager timeManager) {
+        this.timeManager = timeManager;
+    }
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
 
-        timeBuffer -= elapsed;
-        return bestColumn;
+    public int decideNextMove() {
+        return decideNextMove(Deadline.never(), null);
     }
 
-    private float evaluate(boolean maximize, float alpha, float beta, int depthLeft) {
-        searchCount++;
+    /**
+     * Decides the next move, returning early if the deadline passes or is cancelled from another thread. The
+     * time manager's deadline applies as well. Progress is reported to the listener if it is not null.
+     */
+    public int decideNextMove(Deadline deadline, ProgressListener listener) {
+        stopPondering();
 
-        BoardState bs = new BoardState(playerBoard, opponentBoard);
-        if (cache.containsKey(bs)) {
-            cacheHits++;
-            return cache.get(bs);
+        // Statistics
+        statistics = new Statistics();
+        stopwatch.reset();
+        search.resetStatistics();
+        search.newSearch();
+
+        // Keep the generation of the entries the ponder search made during the opponent's turn
+        if (pondered) {
+            statistics.ponderDepth  = ponderDepth;
+            statistics.ponderMnodes = ponderSearch.searchCount / 1000000f;
+            ponderSearch = null;
+            pondered = false;
         }
-        else cacheMisses++;
+        else cache.newSearch();
 
-        float eval;
-        if (depthLeft <= 0 || isTerminal()) {
-            if (winner == Coin.toWinner(player))
-                eval = Float.POSITIVE_INFINITY;
+        int moves = position.getMoves();
+        int depth = 0;
+        int completedDepth = 0;
+
+        int bestColumn = -1;
+        int bestResult = -Search.INFINITY;
 
-            else if (winner == Coin.toWinner(opponent))
-                eval = Float.NEGATIVE_INFINITY;
+        timeManager.startMove(stopwatch.getStart(), moves, maxMoves);
+        statistics.budget = timeManager.getBudget() / 1000000;
+        deadline.restrict(timeManager.getDeadline());
 
-            else if (winner == Winner.NONE)
-                eval = heuristic();
+        // Use the opening book if the position is in it
+        if (book != null) {
+            int bookColumn = book.lookup(smallPosition);
+            if (bookColumn != -1) {
+                statistics.column  = bookColumn;
+                statistics.book    = true;
+                statistics.elapsed = stopwatch.elapsed();
+
+                return finishMove(bookColumn);
+            }
+        }
 
-            else eval = 0;
-        } else {
-            float best = maximize ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+        // Solve the rest of the game exactly if the solver is expected to finish in half the budget
+        int solvedColumn = solveEndgame(statistics.budget / 2, deadline);
+        if (solvedColumn != -1) {
+            if (listener != null)
+                listener.update(solvedColumn, maxMoves - moves);
+
+            statistics.column       = solvedColumn;
+            statistics.depth        = maxMoves - moves;
+            statistics.threads      = 1;
+            statistics.elapsed      = stopwatch.elapsed();
+            statistics.mnodes       = solver.searchCount / 1000000f;
+            statistics.mnodesPerSec = statistics.mnodes / (Math.max(1, stopwatch.elapsed()) / 1000f);
+            printStatistics();
+
+            return finishMove(solvedColumn);
+        }
 
-            for (int i = 0; i < width; i++) {
-                int column = bestColumns[i];
+        // The search aborts itself at the deadline, keeping the result of the last complete iteration
+        search.setDeadline(deadline);
 
-                if (columnHeights[column] == height)
-                    continue;
+        Search[] helpers = startHelpers();
 
-                // Apply move to board
-                addCoin(column, maximize ? player : opponent);
+        if (parallelism == Parallelism.YOUNG_BROTHERS_WAIT && threads > 1 && splitPool == null) {
+            splitPool = new ForkJoinPool(threads);
+            search.setParallel(splitPool, SPLIT_DEPTH);
+        }
 
-                // Evaluate child node
-                float result = evaluate(!maximize, alpha, beta, depthLeft - 1);
-                best = maximize ? Math.max(result, best) : Math.min(result, best);
+        // Root columns from the middle out at first, then from best to worst result of the last iteration
+        int[] rootOrder = Search.middleOut(width);
+        int[] columnResults = new int[width];
 
-                // Alpha-beta pruning
-                boolean prune = false;
-                if (maximize) {
-                    if (best >= beta)
-                        prune = true;
+        while(depth < maxMoves - moves) {
+            long iterationStart = stopwatch.elapsedNanos();
+            long iterationNodes = search.searchCount;
+
+            // Aspiration window around the result of the last iteration, widened if the result falls outside
+            int alpha = -Search.INFINITY;
+            int beta = Search.INFINITY;
+            if (depth > 0 && !Search.isWin(bestResult) && !Search.isLoss(bestResult)) {
+                alpha = bestResult - ASPIRATION_WINDOW;
+                beta = bestResult + ASPIRATION_WINDOW;
+            }
 
-                    alpha = Math.max(alpha, best);
-                } else {
-                    if (best <= alpha)
-                        prune = true;
+            int column = searchRoot(rootOrder, depth, columnResults, alpha, beta);
 
-                    beta = Math.min(beta, best);
-                }
+            if (!search.isAborted() && (columnResults[column] <= alpha || columnResults[column] >= beta)) {
+                statistics.aspirationFailures++;
 
-                // Undo move
-                removeCoin(column);
+                alpha = -Search.INFINITY;
+                beta = Search.INFINITY;
+                column = searchRoot(rootOrder, depth, columnResults, alpha, beta);
+            }
 
-                if (prune) {
-                    statistics.prunes[depthLeft + 1]++;
-                    break;
+            if (search.isAborted()) {
+                // Columns finished before the abort are searched deeper than the last iteration, so a column
+                // proven best among them within the window is kept
+                if (column != -1 && columnResults[column] > alpha && columnResults[column] < beta) {
+                    bestColumn = column;
+                    bestResult = columnResults[column];
                 }
-            }
 
-            eval = best;
-        }
+                break;
+            }
 
-        cache.put(bs, eval);
-        return eval;
-    }
+            bestColumn = column;
+            bestResult = columnResults[column];
+            completedDepth = depth;
 
-    private float evaluate(boolean maximize, int depthLeft) {
-        return evaluate(maximize, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, depthLeft);
-    }
+            statistics.iterationMillis[depth] = (stopwatch.elapsedNanos() - iterationStart) / 1e6f;
+            statistics.iterationMnodes[depth] = (search.searchCount - iterationNodes) / 1e6f;
 
-    private float heuristic() {
-        int goodValue = 0;
-        int badValue = 0;
+            if (listener != null)
+                listener.update(bestColumn, depth);
 
-        long goodBoard = playerBoard | emptyBoard;
-        long badBoard =  opponentBoard | emptyBoard;
+            // If a winning move is possible, take it
+            if (depth == 0 && Search.isWin(bestResult))
+                break;
 
-        for (int i = 0; i < maxMoves; i++) {
-            int row = (i / width);
-            int value = height - row;
+            rootOrder = Search.orderColumns(columnResults);
 
-            if (Masks.intersectsMask(goodBoard, masks.won.N [i])) goodValue += value;
-            if (Masks.intersectsMask(goodBoard, masks.won.NE[i])) goodValue += value;
-            if (Masks.intersectsMask(goodBoard, masks.won.E [i])) goodValue += value;
-            if (Masks.intersectsMask(goodBoard, masks.won.SE[i])) goodValue += value;
-            if (Masks.intersectsMask(goodBoard, masks.won.S [i])) goodValue += value;
-            if (Masks.intersectsMask(goodBoard, masks.won.SW[i])) goodValue += value;
-            if (Masks.intersectsMask(goodBoard, masks.won.W [i])) goodValue += value;
-            if (Masks.intersectsMask(goodBoard, masks.won.NW[i])) goodValue += value;
+            // The first iteration only looks for immediate wins and those the ponder search covered through the
+            // cache are cheap, so neither says anything about how the search grows
+            long iteration = stopwatch.elapsedNanos() - iterationStart;
+            if (depth > 0 && depth >= statistics.ponderDepth && !timeManager.shouldDeepen(iteration, stopwatch.elapsedNanos()))
+                break;
 
-            if (Masks.intersectsMask(badBoard, masks.won.N [i])) badValue += value;
-            if (Masks.intersectsMask(badBoard, masks.won.NE[i])) badValue += value;
-            if (Masks.intersectsMask(badBoard, masks.won.E [i])) badValue += value;
-            if (Masks.intersectsMask(badBoard, masks.won.SE[i])) badValue += value;
-            if (Masks.intersectsMask(badBoard, masks.won.S [i])) badValue += value;
-            if (Masks.intersectsMask(badBoard, masks.won.SW[i])) badValue += value;
-            if (Masks.intersectsMask(badBoard, masks.won.W [i])) badValue += value;
-            if (Masks.intersectsMask(badBoard, masks.won.NW[i])) badValue += value;
+            // Skip the iterations the ponder search covered completely
+            if (depth == 0) depth = Math.max(7, statistics.ponderDepth - 2);
+            else depth++;
         }
 
-        return goodValue - badValue;
-    }
+        stopHelpers(helpers);
+
+        if (PRINT_STATISTICS && Search.isLoss(bestResult))
+            System.out.println("No non-losing move available");
 
-    private void addCoin(int column, byte coin) {
-        int row = columnHeights[column]++;
-        state[column][row] = coin;
+        // Statistics
+        for (Search s : helpers) merge(s);
+        merge(search);
 
-        if (coin == player) playerBoard |= masks.getCoinMask(column, row);
-        else if (coin == opponent) opponentBoard |= masks.getCoinMask(column, row);
-        emptyBoard = ~(playerBoard | opponentBoard);
+        statistics.column       = bestColumn;
+        statistics.depth        = completedDepth;
+        statistics.threads      = threads;
+        statistics.elapsed      = stopwatch.elapsed();
+        statistics.mnodesPerSec = statistics.mnodes / ((float)stopwatch.elapsed() / 1000f);
+        statistics.cacheFill    = cache.fill();
+        printStatistics();
 
-        moves++;
-        winner = checkWinner(column, coin);
+        return finishMove(bestColumn);
     }
 
-    private void removeCoin(int column) {
-        int row = --columnHeights[column];
-        state[column][row] = Coin.NONE;
+    private void printStatistics() {
+        if (!PRINT_STATISTICS)
+            return;
 
-        long coinMask = masks.getCoinMask(column, row);
-        playerBoard   |= coinMask;
-        playerBoard   ^= coinMask;
-        opponentBoard |= coinMask;
-        opponentBoard ^= coinMask;
-        emptyBoard = ~(playerBoard | opponentBoard);
-
-        moves--;
-        winner = Winner.NONE;
+        System.out.println(statistics);
+        System.out.println();
     }
 
-    private boolean isTerminal() {
-        return winner != Winner.NONE;
+    /**
+     * Gives the time manager the time the move took and reports the move to the telemetry, if it is enabled.
+     */
+    private int finishMove(int column) {
+        timeManager.endMove(stopwatch.elapsedNanos());
+
+        if (telemetry != null)
+            telemetry.record(width, height, position.getMoves(), statistics);
+
+        return column;
     }
 
-    private Winner checkWinner(int column, byte coin) {
-        if (checkLine(column, coin))
-            return Coin.toWinner(coin);
+    /**
+     * Runs the exact solver if it is predicted to finish within the budget (ms). Returns the best column, or -1
+     * if the solver was not used or ran out of time.
+     */
+    private int solveEndgame(long budget, Deadline deadline) {
+        if (smallPosition == null)
+            return -1;
+
+        int moves = position.getMoves();
+        int empty = maxMoves - moves;
+
+        double predicted = Math.exp(solverGrowth * empty) / solverNodesPerMs;
+        if (predicted > budget)
+            return -1;
+
+        // It is always our turn when deciding a move
+        long mask = smallPosition.getPlayerBoard() | smallPosition.getOpponentBoard();
+        long start = System.nanoTime();
+        int column = solver.bestColumn(smallPosition.getPlayerBoard(), mask, moves,
+                new Deadline(start + budget * 1000000, deadline));
+        double took = Math.max(1, (System.nanoTime() - start) / 1000000.0);
+
+        // Update the model, a solver that ran out of time grows at least as fast as it got so far
+        double growth = Math.log(Math.max(2, solver.searchCount)) / empty;
+        solverGrowth = column == -1 ? Math.max(solverGrowth, growth) : (solverGrowth + growth) / 2;
+        solverNodesPerMs = Math.max(1, solver.searchCount / took);
+
+        if (column != -1) {
+            statistics.solved = true;
+            statistics.solverScore = solver.getScore();
+            statistics.solverExact = solver.isExact();
+            if (solver.isExact())
+                statistics.solverDistance = solver.distance(solver.getScore(), moves);
+        }
+
+        return column;
+    }
 
-        if (moves == maxMoves)
-            return Winner.TIE;
+    private int searchRoot(int[] columns, int depth, int[] columnResults, int alpha, int beta) {
+        if (splitPool == null)
+            return search.searchRoot(columns, depth, columnResults, alpha, beta);
 
-        return Winner.NONE;
+        // Tasks are only forked into the pool when the search itself runs inside it
+        return splitPool.invoke(ForkJoinTask.adapt(() -> search.searchRoot(columns, depth, columnResults, alpha, beta)));
     }
 
-    private int checkLineLength(int right, int up, int column, int row, byte coin) {
-        int count = 0;
+    private Search[] startHelpers() {
+        if (parallelism != Parallelism.LAZY_SMP)
+            return new Search[0];
 
-        column += right;
-        row += up;
+        Search[] helpers = new Search[threads - 1];
+        if (helpers.length == 0)
+            return helpers;
 
-        while(column >= 0 && column < width && row >= 0 && row < height) {
-            if(state[column][row] == coin) count++;
-            else break;
+        if (helperPool == null) {
+            helperPool = Executors.newFixedThreadPool(helpers.length, runnable -> {
+                Thread thread = new Thread(runnable, "Group12-helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        // Read here, as the position changes while the helpers run
+        int remaining = maxMoves - position.getMoves();
+
+        helperFutures.clear();
+        for (int i = 0; i < helpers.length; i++) {
+            // Each helper searches its own copy of the board
+            Search helper = new Search(position.copy(), cache);
+            int index = i + 1;
 
-            column += right;
-            row += up;
+            helpers[i] = helper;
+            helperFutures.add(helperPool.submit(() -> runHelper(helper, index, remaining)));
         }
 
-        return count;
+        return helpers;
     }
 
-    private boolean checkLine(int column, byte coin) {
-        int row = columnHeights[column] - 1;
+    private void runHelper(Search helper, int index, int remaining) {
+        int[] columnResults = new int[width];
+
+        // Start at different depths and root orders so the helpers spread out over the tree
+        int depth = 7 + index % 2;
+        while (depth < remaining && !helper.isAborted()) {
+            helper.searchRoot(rootOrders[index % width], depth, columnResults, -Search.INFINITY, Search.INFINITY);
+            depth++;
+        }
+    }
 
-        if (checkLineLength(-1, 1, column, row, coin) + checkLineLength(1,  -1, column, row, coin) >= 3 || // NW + SE
-                checkLineLength(1, 1, column, row, coin)  + checkLineLength(-1, -1, column, row, coin) >= 3 || // NE + SW
-                checkLineLength(-1, 0, column, row, coin)  + checkLineLength(1,  0, column, row, coin) >= 3 || // W + E
-                checkLineLength(0, -1, column, row, coin) >= 3) // S
-            return true;
+    private void stopHelpers(Search[] helpers) {
+        for (Search helper : helpers) {
+            helper.stop();
+        }
 
-        return false;
+        for (Future<?> future : helperFutures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+    private void merge(Search s) {
+        statistics.mnodes          += s.searchCount / 1000000f;
+        statistics.cacheHits       += s.cacheHits;
+        statistics.cacheMisses     += s.cacheMisses;
+        statistics.cacheCollisions += s.cacheCollisions;
+        statistics.cacheStores     += s.cacheStores;
+        statistics.cacheOverwrites += s.cacheOverwrites;
+        statistics.researches      += s.researches;
+
+        for (int i = 0; i < statistics.prunes.length; i++) {
+            statistics.nodes[i] += s.nodes[i];
+            statistics.prunes[i] += s.prunes[i];
+            statistics.firstPrunes[i] += s.firstPrunes[i];
+        }
     }
 
     public class Statistics {
         public int column;
         public int depth;
+        public int threads;
+        public boolean book;
 
         public long elapsed;
+        public long budget;
+
+        // Search of the opponent's replies while it was thinking about the move before this one
+        public int ponderDepth;
+        public float ponderMnodes;
 
         public float mnodes;
         public float mnodesPerSec;
 
-        public int[] prunes = new int[maxMoves];
+        // Nodes by the depth left to search below them
+        public long[] nodes = new long[maxMoves + 1];
+
+        // Time and nodes of the main search's completed iterations, by the depth they searched to
+        public float[] iterationMillis = new float[maxMoves + 1];
+        public float[] iterationMnodes = new float[maxMoves + 1];
+
+        // Cutoffs by depth, and those caused by the first column tried
+        public int[] prunes = new int[maxMoves + 1];
+        public int[] firstPrunes = new int[maxMoves + 1];
+
+        public int cacheFill;
+        public long cacheHits;
+        public long cacheMisses;
+        public long cacheCollisions;
+        public long cacheStores;
+        public long cacheOverwrites;
+
+        public int researches;
+        public int aspirationFailures;
+
+        public boolean solved;
+        public int solverScore;
+        public boolean solverExact;
+        // Only known for an exact score
+        public int solverDistance;
+
+        /**
+         * Percentage of the cutoffs at the depth that were caused by the first column tried.
+         */
+        public float firstPruneRate(int depth) {
+            return prunes[depth] == 0 ? 0 : 100f * firstPrunes[depth] / prunes[depth];
+        }
+
+        /**
+         * Effective branching factor, the growth in nodes per ply over the last two completed iterations, or 0 if
+         * there were too few. Two plies even out the difference between odd and even depths. Iterations the cache
+         * answered almost on its own say nothing about the growth and are left out.
+         */
+        public float branchingFactor() {
+            int last = depth;
+            int previous = last - 2;
+            if (previous < 1 || iterationMnodes[previous] < 0.01f) previous = last - 1;
 
-        public int cacheSize;
-        public int cacheHits;
-        public int cacheMisses;
+            if (previous < 1 || iterationMnodes[previous] < 0.01f)
+                return 0;
+
+            return (float) Math.pow(iterationMnodes[last] / iterationMnodes[previous], 1.0 / (last - previous));
+        }
 
         public String toString() {
             StringBuilder sb = new StringBuilder();
@@ -426,43 +709,74 @@ public class GameBoard {
             sb.append("Statistics\n");
             sb.append("  COLUMN              = " + column                               + "\n");
             sb.append("  DEPTH               = " + depth                                + "\n");
+            sb.append("  THREADS             = " + threads                              + "\n");
             sb.append("  ELAPSED             = " + elapsed                              + " ms\n");
+            sb.append("  BUDGET              = " + budget + " ms (" + 100 * elapsed / Math.max(1, budget) + " % used)\n");
             sb.append("  TOTAL               = " + String.format("%.2f", mnodes)        + " Mnodes\n");
             sb.append("  SPEED               = " + String.format("%.2f", mnodesPerSec)  + " Mnodes/sec\n");
+            sb.append("  BRANCHING FACTOR    = " + String.format("%.2f", branchingFactor()) + "\n");
+            if (ponderMnodes > 0)
+                sb.append("  PONDER              = depth " + ponderDepth + ", " + String.format("%.2f", ponderMnodes) + " Mnodes\n");
+
+            if (solved) {
+                String result = solverScore > 0 ? "WIN" : solverScore < 0 ? "LOSS" : "DRAW";
+
+                sb.append("\n");
+                sb.append("Solver\n");
+                if (solverExact)
+                    result += " in " + solverDistance + " plies";
+
+                sb.append("  RESULT              = " + result + "\n");
+
+                return sb.toString();
+            }
 
             sb.append("\n");
             sb.append("Pruning\n");
 
             sb.append("  DEPTH                 ");
-            for (int i = 0; i < 10 && i < prunes.length; i++) {
+            for (int i = 0; i <= depth + 1 && i < prunes.length; i++) {
                 sb.append(String.format("%02d   ", i));
             }
             sb.append("\n");
 
             sb.append("  PRUNES (k)            ");
-            for (int i = 0; i < 10 && i < prunes.length; i++) {
+            for (int i = 0; i <= depth + 1 && i < prunes.length; i++) {
                 sb.append(String.format("%04d ", prunes[i]/1000));
             }
             sb.append("\n");
 
+            sb.append("  FIRST MOVE (%)        ");
+            for (int i = 0; i <= depth + 1 && i < prunes.length; i++) {
+                sb.append(String.format("%4.0f ", firstPruneRate(i)));
+            }
+            sb.append("\n");
+
+            sb.append("  RESEARCHES (k)      = " + researches / 1000 + "\n");
+            sb.append("  ASPIRATION FAILURES = " + aspirationFailures + "\n");
+
             sb.append("\n");
             sb.append("Cache\n");
-            sb.append("  SIZE                = " + cacheSize / 1000   + " k\n");
+            sb.append("  FILL                = " + String.format("%.1f", cacheFill / 10f) + " %\n");
             sb.append("  HITS                = " + cacheHits / 1000   + " k\n");
             sb.append("  MISSES              = " + cacheMisses / 1000 + " k\n");
             sb.append("  RATIO (hits/misses) = " + String.format("%.1f", ((float)cacheHits / (float)cacheMisses)) + "\n");
             sb.append("  RATIO (hits/total)  = " + String.format("%.1f", ((float)cacheHits / (mnodes * 1000000)))             + "\n");
+            if (Telemetry.ENABLED) {
+                sb.append("  COLLISIONS          = " + String.format("%.1f", 100f * cacheCollisions / Math.max(1, cacheMisses)) + " % of misses\n");
+                sb.append("  OVERWRITES          = " + String.format("%.1f", 100f * cacheOverwrites / Math.max(1, cacheStores)) + " % of stores\n");
+            }
 
             return sb.toString();
         }
     }
 
-    private static class Coin {
+    static class Coin {
         public static final byte NONE = 0;
         public static final byte BLUE = 1;
         public static final byte RED = 2;
 
-        private static Winner toWinner(byte coin) {
+        static Winner toWinner(byte coin) {
             switch (coin) {
                 case Coin.BLUE:
                     return Winner.BLUE;
@@ -473,66 +787,4 @@ public class GameBoard {
             }
         }
     }
-
-    private class BoardState {
-        public long playerBoard;
-        public long opponentBoard;
-
-        public BoardState(long playerBoard, long opponentBoard) {
-            this.playerBoard = playerBoard;
-            this.opponentBoard = opponentBoard;
-        }
-
-        @Override
-        public int hashCode() {
-            int hash = 5;
-            for (int row = 0; row < height; row++) {
-                for (int column = 0; column < width/2; column++) {
-                    long leftMask = masks.getCoinMask(column, row);
-                    long rightMask = masks.getCoinMask(width - column - 1, row);
-
-                    int left = 0, right = 0;
-
-                    if (Masks.intersectsMask(playerBoard, leftMask)) left = 1;
-                    else if (Masks.intersectsMask(this.opponentBoard, leftMask)) left = 2;
-
-                    if (Masks.intersectsMask(playerBoard, rightMask)) right = 1;
-                    else if (Masks.intersectsMask(this.opponentBoard, rightMask)) right = 2;
-
-                    hash = hash * 7 + left + right;
-                }
-            }
-
-            return hash;
-        }
-
-        @Override
-        public boolean equals(Object that) {
-            if (that == null) return false;
-            if (this == that) return true;
-            if (getClass() != that.getClass()) return false;
-
-            BoardState thatBoardState = (BoardState) that;
-            if (thatBoardState.playerBoard == playerBoard && thatBoardState.opponentBoard == opponentBoard)
-                return true;
-
-            return false;
-        }
-    }
-
-    private class ResultKeyComparator implements Comparator<AbstractMap.SimpleEntry<Integer, Float>> {
-        @Override
-        public int compare(AbstractMap.SimpleEntry<Integer, Float> a, AbstractMap.SimpleEntry<Integer, Float> b) {
-            int center = width / 2;
-
-            return Math.abs(center - a.getKey()) - Math.abs(center - b.getKey());
-        }
-    }
-
-    private class ResultValueComparator implements Comparator<AbstractMap.SimpleEntry<Integer, Float>> {
-        @Override
-        public int compare(AbstractMap.SimpleEntry<Integer, Float> a, AbstractMap.SimpleEntry<Integer, Float> b) {
-            return Float.compare(b.getValue(), a.getValue());
-        }
-    }
 }
\ No newline at end of file
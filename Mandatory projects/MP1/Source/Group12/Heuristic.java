@@ -0,0 +1,134 @@
+package Group12;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class Heuristic {
+    private static final ConcurrentHashMap<Integer, Heuristic> SHARED = new ConcurrentHashMap<>();
+
+    // Bonus for a window holding only one player's coins, indexed by the number of coins
+    static final int[] COIN_BONUS = { 0, 0, 0, 4, 0 };
+
+    private final int height;
+
+    // Every possible line of four, each listed once
+    private final long[] windows;
+    private final int[] weights;
+
+    // Indices of the windows containing a cell, indexed by offset
+    private final int[][] cellWindows;
+
+    public Heuristic(Masks masks, int width, int height) {
+        this.height = height;
+
+        ArrayList<Long> windowList = new ArrayList<>();
+        ArrayList<Integer> weightList = new ArrayList<>();
+
+        for (int column = 0; column < width; column++) {
+            for (int row = 0; row < height; row++) {
+                int offset = masks.getOffset(column, row);
+
+                // Only the directions going up or right, so each window is found from exactly one end
+                addWindow(windowList, weightList, masks.won.N [offset], row, row + 3);
+                addWindow(windowList, weightList, masks.won.NE[offset], row, row + 3);
+                addWindow(windowList, weightList, masks.won.E [offset], row, row);
+                addWindow(windowList, weightList, masks.won.SE[offset], row, row - 3);
+            }
+        }
+
+        windows = new long[windowList.size()];
+        weights = new int[windowList.size()];
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = windowList.get(i);
+            weights[i] = weightList.get(i);
+        }
+
+        cellWindows = new int[masks.getSize()][];
+        for (int column = 0; column < width; column++) {
+            for (int row = 0; row < height; row++) {
+                long coinMask = masks.getCoinMask(column, row);
+
+                int count = 0;
+                for (long window : windows) {
+                    if ((window & coinMask) != 0) count++;
+                }
+
+                int[] indices = new int[count];
+                for (int i = 0, j = 0; i < windows.length; i++) {
+                    if ((windows[i] & coinMask) != 0) indices[j++] = i;
+                }
+
+                cellWindows[masks.getOffset(column, row)] = indices;
+            }
+        }
+    }
+
+    /**
+     * Returns the heuristic of the size, shared by every board of it.
+     */
+    public static Heuristic forSize(int width, int height) {
+        return SHARED.computeIfAbsent(width << 16 | height,
+                size -> new Heuristic(Masks.forSize(width, height), width, height));
+    }
+
+    public int windowCount() {
+        return windows.length;
+    }
+
+    /**
+     * Scores a board from scratch from the point of view of the player.
+     */
+    public int score(long playerBoard, long opponentBoard) {
+        int score = 0;
+
+        for (int i = 0; i < windows.length; i++) {
+            score += windowScore(i, playerBoard, opponentBoard);
+        }
+
+        return score;
+    }
+
+    /**
+     * Returns the change of the score when the coin at the offset is added, given the boards before and after.
+     */
+    public int delta(int offset, long playerBefore, long opponentBefore, long playerAfter, long opponentAfter) {
+        int delta = 0;
+
+        for (int i : cellWindows[offset]) {
+            delta += windowScore(i, playerAfter, opponentAfter) - windowScore(i, playerBefore, opponentBefore);
+        }
+
+        return delta;
+    }
+
+    private int windowScore(int i, long playerBoard, long opponentBoard) {
+        long window = windows[i];
+        long player = playerBoard & window;
+        long opponent = opponentBoard & window;
+
+        // Windows open to both or to neither player cancel out
+        if ((player == 0) == (opponent == 0))
+            return 0;
+
+        if (opponent == 0)
+            return weights[i] + COIN_BONUS[Long.bitCount(player)];
+
+        return -weights[i] - COIN_BONUS[Long.bitCount(opponent)];
+    }
+
+    private void addWindow(ArrayList<Long> windowList, ArrayList<Integer> weightList, long window, int startRow, int endRow) {
+        if (window == 0)
+            return;
+
+        windowList.add(window);
+        weightList.add(weight(height, startRow, endRow));
+    }
+
+    /**
+     * Weight of a window between the rows on a board of the height.
+     */
+    static int weight(int height, int startRow, int endRow) {
+        // Lower windows are worth more, both ends counted like the old per-cell heuristic did
+        return (height - startRow) + (height - endRow);
+    }
+}
@@ -0,0 +1,295 @@
+package Group12;
+
+import Group12.GameBoard.Coin;
+import Group12.GameBoard.Winner;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Position on a board with more cells than fit in a long, where Masks and Heuristic do not work. The coins are
+ * kept in bitboards of several longs, in the layout of Masks. Every window of four cells counts the coins each
+ * side has in it, so adding a coin updates the heuristic and finds a line of four by touching only the windows
+ * through its cell, however large the board is.
+ */
+public class LargePosition implements Board {
+    private final int width, height;
+    private final int maxMoves;
+    private final int columnBits;
+
+    private final Windows windows;
+    private final Zobrist zobrist;
+
+    private final byte player;
+    private final byte opponent;
+
+    private final long[] playerBoard;
+    private final long[] opponentBoard;
+
+    private long hash;
+    private long mirrorHash;
+
+    // Coins of the player and of the opponent in every window
+    private final byte[] playerCounts;
+    private final byte[] opponentCounts;
+
+    // Heuristic score after each move, updated incrementally
+    private final int[] scores;
+
+    private final int[] columnHeights;
+    private int moves;
+    private Winner winner = Winner.NONE;
+
+    public LargePosition(int width, int height, byte player) {
+        this.width = width;
+        this.height = height;
+        this.maxMoves = width * height;
+        this.columnBits = height + 1;
+
+        this.windows = Windows.forSize(width, height);
+        this.zobrist = Zobrist.forSize(width, height);
+
+        this.player = player;
+        this.opponent = player == Coin.BLUE ? Coin.RED : Coin.BLUE;
+
+        int words = (width * columnBits + 63) / 64;
+        this.playerBoard = new long[words];
+        this.opponentBoard = new long[words];
+
+        this.playerCounts = new byte[windows.weights.length];
+        this.opponentCounts = new byte[windows.weights.length];
+
+        this.scores = new int[maxMoves + 1];
+        this.columnHeights = new int[width];
+    }
+
+    private LargePosition(LargePosition that) {
+        this.width = that.width;
+        this.height = that.height;
+        this.maxMoves = that.maxMoves;
+        this.columnBits = that.columnBits;
+
+        this.windows = that.windows;
+        this.zobrist = that.zobrist;
+
+        this.player = that.player;
+        this.opponent = that.opponent;
+
+        this.playerBoard = that.playerBoard.clone();
+        this.opponentBoard = that.opponentBoard.clone();
+        this.hash = that.hash;
+        this.mirrorHash = that.mirrorHash;
+
+        this.playerCounts = that.playerCounts.clone();
+        this.opponentCounts = that.opponentCounts.clone();
+
+        this.scores = that.scores.clone();
+        this.columnHeights = that.columnHeights.clone();
+        this.moves = that.moves;
+        this.winner = that.winner;
+    }
+
+    public LargePosition copy() {
+        return new LargePosition(this);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMaxMoves() {
+        return maxMoves;
+    }
+
+    public byte getPlayer() {
+        return player;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public long getMirrorHash() {
+        return mirrorHash;
+    }
+
+    public int getScore() {
+        return scores[moves];
+    }
+
+    public int getMoves() {
+        return moves;
+    }
+
+    public byte getCoinToMove() {
+        // Blue always starts
+        return moves % 2 == 0 ? Coin.BLUE : Coin.RED;
+    }
+
+    public Winner getWinner() {
+        return winner;
+    }
+
+    public boolean isTerminal() {
+        return winner != Winner.NONE;
+    }
+
+    public int getColumnHeight(int column) {
+        return columnHeights[column];
+    }
+
+    public boolean isFull(int column) {
+        return columnHeights[column] == height;
+    }
+
+    public byte getCoin(int column, int row) {
+        int offset = column * columnBits + row;
+        long bit = 1L << offset;
+
+        if ((playerBoard[offset >>> 6] & bit) != 0) return player;
+        if ((opponentBoard[offset >>> 6] & bit) != 0) return opponent;
+        return Coin.NONE;
+    }
+
+    public void addCoin(int column, byte coin) {
+        int row = columnHeights[column]++;
+        int offset = column * columnBits + row;
+
+        int side = coin == player ? 0 : 1;
+        byte[] counts = side == 0 ? playerCounts : opponentCounts;
+        (side == 0 ? playerBoard : opponentBoard)[offset >>> 6] |= 1L << offset;
+
+        // Only the windows through the cell change, and one of them holds four coins if the coin won
+        int delta = 0;
+        boolean won = false;
+        for (int window : windows.cellWindows[column * height + row]) {
+            delta -= windowScore(window);
+            won |= ++counts[window] == 4;
+            delta += windowScore(window);
+        }
+        scores[moves + 1] = scores[moves] + delta;
+
+        hash       ^= zobrist.key(side, column, row);
+        mirrorHash ^= zobrist.mirrorKey(side, column, row);
+
+        moves++;
+        if (won) winner = Coin.toWinner(coin);
+        else if (moves == maxMoves) winner = Winner.TIE;
+        else winner = Winner.NONE;
+    }
+
+    public void removeCoin(int column) {
+        int row = --columnHeights[column];
+        int offset = column * columnBits + row;
+        long bit = 1L << offset;
+
+        int side = (playerBoard[offset >>> 6] & bit) != 0 ? 0 : 1;
+        byte[] counts = side == 0 ? playerCounts : opponentCounts;
+        (side == 0 ? playerBoard : opponentBoard)[offset >>> 6] &= ~bit;
+
+        for (int window : windows.cellWindows[column * height + row]) {
+            counts[window]--;
+        }
+
+        hash       ^= zobrist.key(side, column, row);
+        mirrorHash ^= zobrist.mirrorKey(side, column, row);
+
+        moves--;
+        winner = Winner.NONE;
+    }
+
+    public boolean isSymmetric() {
+        if (hash != mirrorHash)
+            return false;
+
+        // The hashes almost always settle it, the coins make sure
+        for (int column = 0; column < width / 2; column++) {
+            if (columnHeights[column] != columnHeights[width - column - 1])
+                return false;
+
+            for (int row = 0; row < columnHeights[column]; row++) {
+                if (getCoin(column, row) != getCoin(width - column - 1, row))
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int windowScore(int window) {
+        int playerCoins = playerCounts[window];
+        int opponentCoins = opponentCounts[window];
+
+        // Windows open to both or to neither player cancel out, the same as in Heuristic
+        if ((playerCoins == 0) == (opponentCoins == 0))
+            return 0;
+
+        if (opponentCoins == 0)
+            return windows.weights[window] + Heuristic.COIN_BONUS[playerCoins];
+
+        return -windows.weights[window] - Heuristic.COIN_BONUS[opponentCoins];
+    }
+
+    /**
+     * Every window of four cells on the board with its weight, and the windows through each cell.
+     */
+    private static class Windows {
+        private static final ConcurrentHashMap<Integer, Windows> SHARED = new ConcurrentHashMap<>();
+
+        final int[] weights;
+
+        // Indexed by column * height + row
+        final int[][] cellWindows;
+
+        static Windows forSize(int width, int height) {
+            return SHARED.computeIfAbsent(width << 16 | height, size -> new Windows(width, height));
+        }
+
+        Windows(int width, int height) {
+            ArrayList<int[]> cells = new ArrayList<>();
+            ArrayList<Integer> weightList = new ArrayList<>();
+
+            // Only the directions going up or right, so each window is found from exactly one end
+            int[][] directions = { { 0, 1 }, { 1, 1 }, { 1, 0 }, { 1, -1 } };
+            for (int column = 0; column < width; column++) {
+                for (int row = 0; row < height; row++) {
+                    for (int[] direction : directions) {
+                        int endColumn = column + 3 * direction[0];
+                        int endRow = row + 3 * direction[1];
+                        if (endColumn >= width || endRow < 0 || endRow >= height)
+                            continue;
+
+                        int[] window = new int[4];
+                        for (int i = 0; i < 4; i++) {
+                            window[i] = (column + i * direction[0]) * height + row + i * direction[1];
+                        }
+
+                        cells.add(window);
+                        weightList.add(Heuristic.weight(height, row, endRow));
+                    }
+                }
+            }
+
+            weights = new int[cells.size()];
+            int[] counts = new int[width * height];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = weightList.get(i);
+                for (int cell : cells.get(i)) counts[cell]++;
+            }
+
+            cellWindows = new int[width * height][];
+            for (int cell = 0; cell < cellWindows.length; cell++) {
+                cellWindows[cell] = new int[counts[cell]];
+                counts[cell] = 0;
+            }
+
+            for (int i = 0; i < weights.length; i++) {
+                for (int cell : cells.get(i)) cellWindows[cell][counts[cell]++] = i;
+            }
+        }
+    }
+}
@@ -1,20 +1,52 @@
 package Group12;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 public class Masks {
+    // Masks never change once built, so every board of a size shares them
+    private static final ConcurrentHashMap<Integer, Masks> SHARED = new ConcurrentHashMap<>();
+
     private final int width;
     private final int height;
 
+    // Each column uses height + 1 bits, the top one being an always empty sentinel so shifts never wrap
+    private final int columnBits;
+    private final long columnMask;
+
     public final Won won;
 
     public Masks(int width, int height) {
+        if (!fits(width, height))
+            throw new IllegalArgumentException("Board of " + width + "x" + height + " does not fit in a bitboard");
+
         this.width = width;
         this.height = height;
+        this.columnBits = height + 1;
+        this.columnMask = (1L << columnBits) - 1;
 
         won = new Won();
     }
 
+    /**
+     * Returns the masks of the size, built only the first time they are asked for.
+     */
+    public static Masks forSize(int width, int height) {
+        return SHARED.computeIfAbsent(width << 16 | height, size -> new Masks(width, height));
+    }
+
+    /**
+     * Whether a board of the size fits in a long, a bit per cell and one more per column.
+     */
+    public static boolean fits(int width, int height) {
+        return width * (height + 1) <= 64;
+    }
+
+    public int getSize() {
+        return width * columnBits;
+    }
+
     public int getOffset(int column, int row) {
-        return row * width + column;
+        return column * columnBits + row;
     }
 
     public long getCoinMask(int column, int row) {
@@ -35,15 +67,50 @@ public class Masks {
         return line;
     }
 
+    /**
+     * Mirrors the board left to right, a column at a time.
+     */
+    public long mirror(long board) {
+        long mirrored = 0;
+        for (int column = 0; column < width; column++) {
+            mirrored |= ((board >>> column * columnBits) & columnMask) << (width - column - 1) * columnBits;
+        }
+
+        return mirrored;
+    }
+
     public void printMask(long mask) {
-        for (long i = 0; i <= 41; i++) {
-            System.out.print(((1l << i) & mask) != 0 ? 1 : 0);
+        for (int row = height - 1; row >= 0; row--) {
+            for (int column = 0; column < width; column++) {
+                System.out.print((getCoinMask(column, row) & mask) != 0 ? 1 : 0);
+            }
 
-            if ((i + 1) % width == 0)
-                System.out.println();
+            System.out.println();
         }
     }
 
+    public boolean connectsFour(long board) {
+        long pairs;
+
+        // Vertical
+        pairs = board & (board >>> 1);
+        if ((pairs & (pairs >>> 2)) != 0) return true;
+
+        // Horizontal
+        pairs = board & (board >>> columnBits);
+        if ((pairs & (pairs >>> 2 * columnBits)) != 0) return true;
+
+        // Diagonal (SW -> NE)
+        pairs = board & (board >>> (columnBits + 1));
+        if ((pairs & (pairs >>> 2 * (columnBits + 1))) != 0) return true;
+
+        // Diagonal (NW -> SE)
+        pairs = board & (board >>> (columnBits - 1));
+        if ((pairs & (pairs >>> 2 * (columnBits - 1))) != 0) return true;
+
+        return false;
+    }
+
     public static boolean intersectsMask(long target, long mask) {
         return mask != 0 && (target & mask) == mask;
     }
@@ -77,7 +144,7 @@ public class Masks {
         }
 
         private long[] getAllWonLineMasks(int up, int right) {
-            long[] lines = new long[width * height];
+            long[] lines = new long[width * columnBits];
             final int upLength = up * 4;
             final int rightLength = right * 4;
 
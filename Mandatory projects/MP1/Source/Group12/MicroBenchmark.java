@@ -0,0 +1,256 @@
+package Group12;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the hot paths of the engine one at a time, in nanoseconds and allocated bytes per operation, on the
+ * positions of Benchmark. Every case is warmed up first and then timed over several iterations, and the mean
+ * and spread over the iterations are reported. Allocations are counted per thread by the JVM, so they include
+ * everything the case allocates and nothing else.
+ */
+public class MicroBenchmark {
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 6;
+
+    private static final long WARMUP_MILLIS = 2000;
+    private static final long ITERATION_MILLIS = 1000;
+    private static final int ITERATIONS = 5;
+
+    private static final int CACHE_MEGABYTES = 64;
+    private static final int SEARCH_DEPTH = 8;
+
+    // Results are folded into this, so the JIT can not throw the measured work away
+    private static volatile long sink;
+
+    private final com.sun.management.ThreadMXBean threads;
+
+    private final Masks masks = new Masks(WIDTH, HEIGHT);
+    private final Heuristic heuristic = new Heuristic(masks, WIDTH, HEIGHT);
+    private final Zobrist zobrist = new Zobrist(WIDTH, HEIGHT);
+    private final TranspositionTable cache = new TranspositionTable(CACHE_MEGABYTES);
+    private final Position[] positions;
+
+    public MicroBenchmark() {
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        positions = new Position[Benchmark.POSITIONS.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = replay(Benchmark.POSITIONS[i]);
+        }
+    }
+
+    /**
+     * Arguments are the names of the cases to run, e.g. "addCoin search", all of them if there are none.
+     */
+    public static void main(String[] args) {
+        MicroBenchmark benchmark = new MicroBenchmark();
+
+        List<Case> cases = new ArrayList<>();
+        for (Case c : benchmark.cases()) {
+            if (args.length == 0 || contains(args, c.name))
+                cases.add(c);
+        }
+
+        if (cases.isEmpty()) {
+            System.out.println("Usage: MicroBenchmark [case ...], where the cases are:");
+            for (Case c : benchmark.cases()) {
+                System.out.println("\t" + c.name);
+            }
+            return;
+        }
+
+        System.out.println(String.format("%-16s %14s %10s %12s", "CASE", "NS/OP", "+/-", "BYTES/OP"));
+        for (Case c : cases) {
+            System.out.println(benchmark.measure(c));
+        }
+    }
+
+    private List<Case> cases() {
+        List<Case> cases = new ArrayList<>();
+
+        cases.add(new Case("addCoin", countMoves(), () -> {
+            long result = 0;
+            for (Position position : positions) {
+                byte coin = position.getCoinToMove();
+                for (int column = 0; column < WIDTH; column++) {
+                    if (position.isFull(column))
+                        continue;
+
+                    position.addCoin(column, coin);
+                    result += position.getScore();
+                    position.removeCoin(column);
+                }
+            }
+            return result;
+        }));
+
+        cases.add(new Case("connectsFour", positions.length * 2, () -> {
+            long result = 0;
+            for (Position position : positions) {
+                if (masks.connectsFour(position.getPlayerBoard())) result++;
+                if (masks.connectsFour(position.getOpponentBoard())) result++;
+            }
+            return result;
+        }));
+
+        cases.add(new Case("heuristic", positions.length, () -> {
+            long result = 0;
+            for (Position position : positions) {
+                result += heuristic.score(position.getPlayerBoard(), position.getOpponentBoard());
+            }
+            return result;
+        }));
+
+        cases.add(new Case("hash", positions.length, () -> {
+            // From scratch, as addCoin keeps the position's hash up to date with two xors
+            long result = 0;
+            for (Position position : positions) {
+                result += Book.hash(zobrist, position, false);
+            }
+            return result;
+        }));
+
+        long[] keys = new long[1 << 16];
+        Random random = new Random(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+
+            // Half of the keys hit
+            if (i % 2 == 0)
+                cache.store(keys[i], i, TranspositionTable.EXACT, 1, i % WIDTH);
+        }
+
+        cases.add(new Case("cacheProbe", keys.length, () -> {
+            long result = 0;
+            for (long key : keys) {
+                result += cache.probe(key);
+            }
+            return result;
+        }));
+
+        cases.add(new Case("cacheStore", keys.length, () -> {
+            for (int i = 0; i < keys.length; i++) {
+                cache.store(keys[i], i, TranspositionTable.LOWER, 2, i % WIDTH);
+            }
+            return cache.probe(keys[0]);
+        }));
+
+        cases.add(new Case("search", positions.length, () -> {
+            // Every search starts from an empty cache, so the iterations measure the same work
+            cache.clear();
+
+            long result = 0;
+            for (Position position : positions) {
+                cache.newSearch();
+                Search search = new Search(position, cache);
+
+                int[] columns = Search.middleOut(WIDTH);
+                int[] results = new int[WIDTH];
+                for (int depth = 1; depth <= SEARCH_DEPTH; depth++) {
+                    result += search.searchRoot(columns, depth, results, -Search.INFINITY, Search.INFINITY);
+                    columns = Search.orderColumns(results);
+                }
+            }
+            return result;
+        }));
+
+        return cases;
+    }
+
+    private String measure(Case c) {
+        run(c, WARMUP_MILLIS);
+
+        double[] nanosPerOperation = new double[ITERATIONS];
+        double bytesPerOperation = 0;
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            long bytes = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+
+            long operations = run(c, ITERATION_MILLIS);
+
+            long elapsed = System.nanoTime() - start;
+            bytes = threads.getCurrentThreadAllocatedBytes() - bytes;
+
+            nanosPerOperation[i] = (double) elapsed / operations;
+            bytesPerOperation += (double) bytes / operations / ITERATIONS;
+        }
+
+        double mean = 0;
+        for (double nanos : nanosPerOperation) mean += nanos / ITERATIONS;
+
+        double variance = 0;
+        for (double nanos : nanosPerOperation) variance += (nanos - mean) * (nanos - mean) / (ITERATIONS - 1);
+
+        return String.format("%-16s %14.2f %10.2f %12.1f", c.name, mean, Math.sqrt(variance), bytesPerOperation);
+    }
+
+    /**
+     * Runs the case until the time is up and returns the number of operations done.
+     */
+    private static long run(Case c, long millis) {
+        long end = System.nanoTime() + millis * 1000000;
+        long operations = 0;
+        long result = 0;
+
+        do {
+            result += c.operation.run();
+            operations += c.operations;
+        } while (System.nanoTime() < end);
+
+        sink += result;
+        return operations;
+    }
+
+    private int countMoves() {
+        int count = 0;
+        for (Position position : positions) {
+            for (int column = 0; column < WIDTH; column++) {
+                if (!position.isFull(column)) count++;
+            }
+        }
+        return count;
+    }
+
+    private static Position replay(String moves) {
+        // Seen from the coin to move, like the engine sees the positions it searches
+        byte player = moves.length() % 2 == 0 ? GameBoard.Coin.BLUE : GameBoard.Coin.RED;
+        Position position = new Position(WIDTH, HEIGHT, player);
+
+        for (int i = 0; i < moves.length(); i++) {
+            position.addCoin(moves.charAt(i) - '0', position.getCoinToMove());
+        }
+
+        return position;
+    }
+
+    private static boolean contains(String[] names, String name) {
+        for (String n : names) {
+            if (n.equals(name)) return true;
+        }
+        return false;
+    }
+
+    private interface Operation {
+        /**
+         * Does the work of a fixed number of operations and returns a value depending on all of it.
+         */
+        long run();
+    }
+
+    private static class Case {
+        final String name;
+        final int operations;
+        final Operation operation;
+
+        Case(String name, int operations, Operation operation) {
+            this.name = name;
+            this.operations = operations;
+            this.operation = operation;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package Group12;
+
+import Group12.GameBoard.Coin;
+import Group12.GameBoard.Winner;
+
+public class Position implements Board {
+    private final int width, height;
+    private final int maxMoves;
+
+    private final Masks masks;
+    private final Zobrist zobrist;
+    private final Heuristic heuristic;
+
+    private final byte player;
+    private final byte opponent;
+
+    private long playerBoard;
+    private long opponentBoard;
+
+    private long hash;
+    private long mirrorHash;
+
+    // Heuristic score after each move, updated incrementally
+    private final int[] scores;
+
+    private final int[] columnHeights;
+    private int moves;
+    private Winner winner = Winner.NONE;
+
+    public Position(int width, int height, byte player) {
+        this.width = width;
+        this.height = height;
+        this.maxMoves = width * height;
+
+        this.masks = Masks.forSize(width, height);
+        this.zobrist = Zobrist.forSize(width, height);
+        this.heuristic = Heuristic.forSize(width, height);
+
+        this.player = player;
+        this.opponent = player == Coin.BLUE ? Coin.RED : Coin.BLUE;
+
+        this.scores = new int[maxMoves + 1];
+        this.columnHeights = new int[width];
+    }
+
+    /**
+     * Copies the position, sharing the precomputed tables.
+     */
+    public Position(Position that) {
+        this.width = that.width;
+        this.height = that.height;
+        this.maxMoves = that.maxMoves;
+
+        this.masks = that.masks;
+        this.zobrist = that.zobrist;
+        this.heuristic = that.heuristic;
+
+        this.player = that.player;
+        this.opponent = that.opponent;
+
+        this.playerBoard = that.playerBoard;
+        this.opponentBoard = that.opponentBoard;
+        this.hash = that.hash;
+        this.mirrorHash = that.mirrorHash;
+
+        this.scores = that.scores.clone();
+        this.columnHeights = that.columnHeights.clone();
+        this.moves = that.moves;
+        this.winner = that.winner;
+    }
+
+    public Position copy() {
+        return new Position(this);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMaxMoves() {
+        return maxMoves;
+    }
+
+    public Masks getMasks() {
+        return masks;
+    }
+
+    public byte getPlayer() {
+        return player;
+    }
+
+    public byte getOpponent() {
+        return opponent;
+    }
+
+    public long getPlayerBoard() {
+        return playerBoard;
+    }
+
+    public long getOpponentBoard() {
+        return opponentBoard;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public long getMirrorHash() {
+        return mirrorHash;
+    }
+
+    public int getScore() {
+        return scores[moves];
+    }
+
+    public int getMoves() {
+        return moves;
+    }
+
+    public byte getCoinToMove() {
+        // Blue always starts
+        return moves % 2 == 0 ? Coin.BLUE : Coin.RED;
+    }
+
+    public Winner getWinner() {
+        return winner;
+    }
+
+    public boolean isTerminal() {
+        return winner != Winner.NONE;
+    }
+
+    public int getColumnHeight(int column) {
+        return columnHeights[column];
+    }
+
+    public boolean isSymmetric() {
+        // Different hashes settle it almost always, the boards make sure if they are equal
+        return hash == mirrorHash && playerBoard == masks.mirror(playerBoard) &&
+                opponentBoard == masks.mirror(opponentBoard);
+    }
+
+    public boolean isFull(int column) {
+        return columnHeights[column] == height;
+    }
+
+    public byte getCoin(int column, int row) {
+        long coinMask = masks.getCoinMask(column, row);
+
+        if ((playerBoard & coinMask) != 0) return player;
+        if ((opponentBoard & coinMask) != 0) return opponent;
+        return Coin.NONE;
+    }
+
+    public void addCoin(int column, byte coin) {
+        int row = columnHeights[column]++;
+
+        long previousPlayerBoard = playerBoard;
+        long previousOpponentBoard = opponentBoard;
+
+        if (coin == player) playerBoard |= masks.getCoinMask(column, row);
+        else if (coin == opponent) opponentBoard |= masks.getCoinMask(column, row);
+
+        scores[moves + 1] = scores[moves] + heuristic.delta(masks.getOffset(column, row),
+                previousPlayerBoard, previousOpponentBoard, playerBoard, opponentBoard);
+
+        int side = coin == player ? 0 : 1;
+        hash       ^= zobrist.key(side, column, row);
+        mirrorHash ^= zobrist.mirrorKey(side, column, row);
+
+        moves++;
+        winner = checkWinner(coin);
+    }
+
+    public void removeCoin(int column) {
+        int row = --columnHeights[column];
+        long coinMask = masks.getCoinMask(column, row);
+
+        int side = (playerBoard & coinMask) != 0 ? 0 : 1;
+        hash       ^= zobrist.key(side, column, row);
+        mirrorHash ^= zobrist.mirrorKey(side, column, row);
+
+        playerBoard   |= coinMask;
+        playerBoard   ^= coinMask;
+        opponentBoard |= coinMask;
+        opponentBoard ^= coinMask;
+
+        moves--;
+        winner = Winner.NONE;
+    }
+
+    public Snapshot snapshot() {
+        return player == Coin.BLUE ?
+                new Snapshot(width, height, playerBoard, opponentBoard) :
+                new Snapshot(width, height, opponentBoard, playerBoard);
+    }
+
+    /**
+     * Sets the position to the coins of the snapshot, rebuilding the hashes and the heuristic score from them.
+     * The moves that led to it are not known, so coins on the board before the restore can not be removed.
+     */
+    public void restore(Snapshot snapshot) {
+        if (snapshot.getWidth() != width || snapshot.getHeight() != height)
+            throw new IllegalArgumentException("Snapshot of a " + snapshot.getWidth() + "x" + snapshot.getHeight() +
+                    " board does not fit a " + width + "x" + height + " board");
+
+        playerBoard   = player == Coin.BLUE ? snapshot.getBlueBoard() : snapshot.getRedBoard();
+        opponentBoard = player == Coin.BLUE ? snapshot.getRedBoard() : snapshot.getBlueBoard();
+
+        hash = 0;
+        mirrorHash = 0;
+        moves = 0;
+        for (int column = 0; column < width; column++) {
+            columnHeights[column] = snapshot.getColumnHeight(column);
+
+            for (int row = 0; row < height; row++) {
+                long coinMask = masks.getCoinMask(column, row);
+                if (((playerBoard | opponentBoard) & coinMask) == 0) {
+                    if (row < columnHeights[column])
+                        throw new IllegalArgumentException("Snapshot has coins above an empty cell");
+                    continue;
+                }
+
+                int side = (playerBoard & coinMask) != 0 ? 0 : 1;
+                hash       ^= zobrist.key(side, column, row);
+                mirrorHash ^= zobrist.mirrorKey(side, column, row);
+            }
+
+            moves += columnHeights[column];
+        }
+
+        scores[moves] = heuristic.score(playerBoard, opponentBoard);
+
+        if (masks.connectsFour(playerBoard)) winner = Coin.toWinner(player);
+        else if (masks.connectsFour(opponentBoard)) winner = Coin.toWinner(opponent);
+        else winner = moves == maxMoves ? Winner.TIE : Winner.NONE;
+    }
+
+    private Winner checkWinner(byte coin) {
+        if (masks.connectsFour(coin == player ? playerBoard : opponentBoard))
+            return Coin.toWinner(coin);
+
+        if (moves == maxMoves)
+            return Winner.TIE;
+
+        return Winner.NONE;
+    }
+}
@@ -0,0 +1,577 @@
+package Group12;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class Search {
+    public static final int INFINITY = 1 << 30;
+
+    // Won positions score WIN minus the number of moves played, so faster wins are preferred
+    public static final int WIN = 1 << 20;
+    private static final int MAX_PLIES = 1 << 10;
+
+    // History scores are halved once one of them passes this, so they stay below the cache and killer moves
+    private static final int HISTORY_LIMIT = 1 << 24;
+
+    private final Board position;
+    private final TranspositionTable cache;
+
+    private final int width;
+    private final int height;
+    private final byte player;
+
+    // Static column order, middle out, breaking ties between columns the move ordering knows nothing about
+    private final int[] bestColumns;
+
+    // Two killer moves per ply, columns that caused a cutoff in a sibling node
+    private final int[][] killers;
+
+    // History scores by side (0 = player, 1 = opponent) and cell (column * height + row), shared with siblings
+    private final int[][] history;
+
+    // Ordered columns and their scores per ply, so nodes do not allocate
+    private final int[][] moveLists;
+    private final int[][] moveScores;
+
+    private volatile boolean stopped = false;
+    private boolean aborted = false;
+
+    // Deadline at which the search stops by itself, read every CLOCK_INTERVAL nodes
+    private static final int CLOCK_INTERVAL = 1024;
+    private Deadline deadline = Deadline.never();
+
+    // Young brothers wait: nodes with at least splitDepth plies left search their younger siblings in parallel
+    private final Search parent;
+    private ForkJoinPool pool = null;
+    private int splitDepth = Integer.MAX_VALUE;
+    private int splitResult;
+
+    // Statistics, merged by the owner of the search when it is done
+    long searchCount = 0;
+    long cacheHits = 0;
+    long cacheMisses = 0;
+    long cacheCollisions = 0;
+    long cacheStores = 0;
+    long cacheOverwrites = 0;
+    int researches = 0;
+    final long[] nodes;
+    final int[] prunes;
+    final int[] firstPrunes;
+
+    public Search(Board position, TranspositionTable cache) {
+        this.position = position;
+        this.cache = cache;
+
+        this.width = position.getWidth();
+        this.height = position.getHeight();
+        this.player = position.getPlayer();
+
+        this.bestColumns = middleOut(width);
+
+        this.killers = newKillers(position.getMaxMoves());
+        this.history = new int[2][width * height];
+        this.moveLists = new int[position.getMaxMoves() + 1][width];
+        this.moveScores = new int[position.getMaxMoves() + 1][width];
+
+        this.nodes = new long[position.getMaxMoves() + 1];
+        this.prunes = new int[position.getMaxMoves() + 1];
+        this.firstPrunes = new int[position.getMaxMoves() + 1];
+        this.parent = null;
+    }
+
+    /**
+     * Creates a search of a sibling subtree, working on its own copy of the parent's position.
+     */
+    private Search(Search parent) {
+        this.position = parent.position.copy();
+        this.cache = parent.cache;
+
+        this.width = parent.width;
+        this.height = parent.height;
+        this.player = parent.player;
+
+        this.bestColumns = parent.bestColumns;
+
+        this.killers = newKillers(parent.killers.length - 1);
+        for (int ply = 0; ply < killers.length; ply++) {
+            System.arraycopy(parent.killers[ply], 0, killers[ply], 0, 2);
+        }
+        this.history = parent.history;
+        this.moveLists = new int[parent.moveLists.length][width];
+        this.moveScores = new int[parent.moveScores.length][width];
+
+        this.nodes = new long[parent.nodes.length];
+        this.prunes = new int[parent.prunes.length];
+        this.firstPrunes = new int[parent.firstPrunes.length];
+
+        this.parent = parent;
+        this.pool = parent.pool;
+        this.splitDepth = parent.splitDepth;
+        this.deadline = parent.deadline;
+    }
+
+    public static boolean isWin(int value) {
+        return value >= WIN - MAX_PLIES;
+    }
+
+    public static boolean isLoss(int value) {
+        return value <= -WIN + MAX_PLIES;
+    }
+
+    /**
+     * Lets nodes with at least splitDepth plies left search their siblings in the pool.
+     * The search itself must then be started from inside the pool.
+     */
+    public void setParallel(ForkJoinPool pool, int splitDepth) {
+        this.pool = pool;
+        this.splitDepth = pool == null ? Integer.MAX_VALUE : splitDepth;
+    }
+
+    /**
+     * Columns of a board of the given width from the middle out.
+     */
+    public static int[] middleOut(int width) {
+        int[] columns = new int[width];
+        for (int i = 0; i < width; i++) {
+            columns[width - i - 1] = i % 2 == 0 ? i/2 : width - (i+1)/2;
+        }
+
+        return columns;
+    }
+
+    /**
+     * Orders the columns from best to worst result, middle out among equal results.
+     */
+    public static int[] orderColumns(int[] results) {
+        int[] columns = middleOut(results.length);
+
+        // Insertion sort keeps the middle out order between equal results
+        for (int i = 1; i < columns.length; i++) {
+            int column = columns[i];
+            int j = i;
+            for (; j > 0 && results[columns[j - 1]] < results[column]; j--) {
+                columns[j] = columns[j - 1];
+            }
+            columns[j] = column;
+        }
+
+        return columns;
+    }
+
+    public void resetStatistics() {
+        searchCount = 0;
+        cacheHits = 0;
+        cacheMisses = 0;
+        cacheCollisions = 0;
+        cacheStores = 0;
+        cacheOverwrites = 0;
+        researches = 0;
+        Arrays.fill(nodes, 0);
+        Arrays.fill(prunes, 0);
+        Arrays.fill(firstPrunes, 0);
+    }
+
+    /**
+     * Prepares the move ordering for a new search: the killer moves are forgotten and the history is aged.
+     */
+    public void newSearch() {
+        for (int[] ply : killers) {
+            Arrays.fill(ply, TranspositionTable.NO_MOVE);
+        }
+
+        ageHistory();
+    }
+
+    /**
+     * Makes a running search return as soon as possible. Can be called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Starts a new search that aborts itself once the deadline passes, undoing an earlier stop.
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+        this.stopped = false;
+        this.aborted = false;
+    }
+
+    private boolean isStopped() {
+        if (!stopped && searchCount % CLOCK_INTERVAL == 0 && deadline.hasPassed())
+            stopped = true;
+
+        return stopped || (parent != null && parent.isStopped());
+    }
+
+    /**
+     * Whether the last evaluation was cut short by stop, in which case its result is meaningless.
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Searches every move of the player in the given column order with principal variation search inside the
+     * window, storing the results by column. Results of all but the best column are only upper bounds.
+     * Returns the best column, or -1 if the search was stopped before any column was done.
+     */
+    public int searchRoot(int[] columns, int depth, int[] results, int alpha, int beta) {
+        int bestColumn = -1;
+        int bestResult = -INFINITY;
+
+        boolean symmetric = position.isSymmetric();
+
+        for (int column : columns) {
+            if (position.isFull(column)) {
+                // This column should not be prioritized at later iterations
+                results[column] = -INFINITY;
+
+                continue;
+            }
+
+            // On a symmetric board the left half mirrors the right half
+            if (symmetric && column < width - column - 1)
+                continue;
+
+            // Apply move to board
+            position.addCoin(column, player);
+
+            int result;
+            if (bestColumn == -1) {
+                result = -negamax(-beta, -alpha, depth);
+            } else {
+                // Prove the column is worse than the best one with a null window, search it fully if not
+                result = -negamax(-alpha - 1, -alpha, depth);
+                if (result > alpha && result < beta) {
+                    researches++;
+                    result = -negamax(-beta, -alpha, depth);
+                }
+            }
+
+            // Undo move
+            position.removeCoin(column);
+
+            if (aborted)
+                break;
+
+            if (result > bestResult || bestColumn == -1) {
+                bestResult = result;
+                bestColumn = column;
+            }
+
+            alpha = Math.max(alpha, result);
+            results[column] = result;
+        }
+
+        if (symmetric) {
+            for (int column = 0; column < width - column - 1; column++) {
+                results[column] = results[width - column - 1];
+            }
+        }
+
+        return bestColumn;
+    }
+
+    /**
+     * Negamax with principal variation search. Values are from the point of view of the coin to move.
+     */
+    public int negamax(int alpha, int beta, int depthLeft) {
+        searchCount++;
+        if (Telemetry.ENABLED) nodes[depthLeft]++;
+
+        if (isStopped()) {
+            aborted = true;
+            return 0;
+        }
+
+        int alphaOriginal = alpha;
+
+        // Mirrored positions share an entry, keyed by the smaller of the two hashes
+        long hash = position.getHash();
+        long mirrorHash = position.getMirrorHash();
+        boolean mirrored = mirrorHash < hash;
+        long key = mirrored ? mirrorHash : hash;
+        long entry = cache.probe(key);
+        int cacheMove = TranspositionTable.NO_MOVE;
+        if (entry != 0) {
+            cacheHits++;
+
+            // The best move of an earlier search is tried first, even if that search was not deep enough
+            cacheMove = TranspositionTable.move(entry);
+            if (mirrored && cacheMove != TranspositionTable.NO_MOVE)
+                cacheMove = width - cacheMove - 1;
+
+            // Only use evaluations based on at least the depth we are about to search
+            if (TranspositionTable.depth(entry) >= depthLeft) {
+                int value = TranspositionTable.value(entry);
+
+                switch (TranspositionTable.bound(entry)) {
+                    case TranspositionTable.EXACT:
+                        return value;
+                    case TranspositionTable.LOWER:
+                        alpha = Math.max(alpha, value);
+                        break;
+                    case TranspositionTable.UPPER:
+                        beta = Math.min(beta, value);
+                        break;
+                }
+
+                if (alpha >= beta)
+                    return value;
+            }
+        }
+        else {
+            cacheMisses++;
+            if (Telemetry.ENABLED && cache.collides(key)) cacheCollisions++;
+        }
+
+        byte coin = position.getCoinToMove();
+
+        int bestMove = TranspositionTable.NO_MOVE;
+        int best;
+        if (position.isTerminal()) {
+            // The last move ended the game, so the coin to move has lost or it is a tie
+            best = position.getWinner() == GameBoard.Winner.TIE ? 0 : -(WIN - position.getMoves());
+        } else if (depthLeft <= 0) {
+            best = coin == player ? position.getScore() : -position.getScore();
+        } else {
+            best = -INFINITY;
+
+            int ply = position.getMoves();
+            int side = coin == player ? 0 : 1;
+            int[] columns = moveLists[ply];
+            int count = orderMoves(columns, cacheMove, ply, side);
+
+            for (int i = 0; i < count; i++) {
+                int column = columns[i];
+
+                // The eldest brother is done, so the window is narrowed and the rest can be searched in parallel
+                if (i > 0 && depthLeft >= splitDepth) {
+                    int siblingColumn = searchSiblings(columns, i, count, alpha, beta, depthLeft);
+
+                    if (aborted)
+                        return 0;
+
+                    if (siblingColumn != -1 && splitResult > best) {
+                        best = splitResult;
+                        bestMove = siblingColumn;
+                    }
+
+                    if (best >= beta) {
+                        prunes[depthLeft + 1]++;
+                        rememberCutoff(bestMove, ply, side, depthLeft);
+                    }
+
+                    break;
+                }
+
+                // Apply move to board
+                position.addCoin(column, coin);
+
+                // Evaluate child node, all but the first with a null window first
+                int result;
+                if (i == 0) {
+                    result = -negamax(-beta, -alpha, depthLeft - 1);
+                } else {
+                    result = -negamax(-alpha - 1, -alpha, depthLeft - 1);
+                    if (result > alpha && result < beta) {
+                        researches++;
+                        result = -negamax(-beta, -alpha, depthLeft - 1);
+                    }
+                }
+
+                // Undo move
+                position.removeCoin(column);
+
+                // Results below an aborted child are incomplete and must not be cached
+                if (aborted)
+                    return 0;
+
+                if (result > best) {
+                    best = result;
+                    bestMove = column;
+                }
+
+                alpha = Math.max(alpha, best);
+
+                // Alpha-beta pruning
+                if (alpha >= beta) {
+                    prunes[depthLeft + 1]++;
+                    if (i == 0) firstPrunes[depthLeft + 1]++;
+
+                    rememberCutoff(column, ply, side, depthLeft);
+                    break;
+                }
+            }
+        }
+
+        // Values outside the original window are only bounds on the real value
+        int bound = TranspositionTable.EXACT;
+        if (best <= alphaOriginal) bound = TranspositionTable.UPPER;
+        else if (best >= beta) bound = TranspositionTable.LOWER;
+
+        if (mirrored && bestMove != TranspositionTable.NO_MOVE)
+            bestMove = width - bestMove - 1;
+
+        boolean overwritten = cache.store(key, best, bound, Math.max(depthLeft, 0), bestMove);
+        if (Telemetry.ENABLED) {
+            cacheStores++;
+            if (overwritten) cacheOverwrites++;
+        }
+
+        return best;
+    }
+
+    /**
+     * Orders the columns to try at a node: the cache's best move, then the killer moves of the ply, then the
+     * rest by history score. On a symmetric board only the right half is tried, each column standing in for its
+     * mirror as well. Returns the number of columns to try.
+     */
+    private int orderMoves(int[] columns, int cacheMove, int ply, int side) {
+        int[] scores = moveScores[ply];
+        int[] history = this.history[side];
+        int count = 0;
+
+        boolean symmetric = position.isSymmetric();
+
+        for (int i = 0; i < width; i++) {
+            int column = bestColumns[i];
+
+            if (position.isFull(column))
+                continue;
+
+            int mirror = width - column - 1;
+            if (symmetric && column < mirror)
+                continue;
+
+            int score;
+            if (column == cacheMove || symmetric && mirror == cacheMove) score = Integer.MAX_VALUE;
+            else if (column == killers[ply][0] || symmetric && mirror == killers[ply][0]) score = Integer.MAX_VALUE - 1;
+            else if (column == killers[ply][1] || symmetric && mirror == killers[ply][1]) score = Integer.MAX_VALUE - 2;
+            else score = history[column * height + position.getColumnHeight(column)];
+
+            // Insertion sort keeps the static order between equal scores
+            int j = count++;
+            for (; j > 0 && scores[j - 1] < score; j--) {
+                columns[j] = columns[j - 1];
+                scores[j] = scores[j - 1];
+            }
+            columns[j] = column;
+            scores[j] = score;
+        }
+
+        return count;
+    }
+
+    private void rememberCutoff(int column, int ply, int side, int depthLeft) {
+        if (killers[ply][0] != column) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = column;
+        }
+
+        // Cutoffs far from the leaves say more about a move than those close to them
+        int cell = column * height + position.getColumnHeight(column);
+        history[side][cell] += depthLeft * depthLeft;
+        if (history[side][cell] > HISTORY_LIMIT)
+            ageHistory();
+    }
+
+    private void ageHistory() {
+        for (int[] scores : history) {
+            for (int cell = 0; cell < scores.length; cell++) {
+                scores[cell] /= 2;
+            }
+        }
+    }
+
+    private static int[][] newKillers(int maxMoves) {
+        int[][] killers = new int[maxMoves + 1][2];
+        for (int[] ply : killers) {
+            Arrays.fill(ply, TranspositionTable.NO_MOVE);
+        }
+
+        return killers;
+    }
+
+    /**
+     * Searches the columns from the given index on as parallel tasks with a null window, each on its own copy
+     * of the position, and fully re-searches those that turn out better. Returns the best column and stores its
+     * value in splitResult, or returns -1 if none finished.
+     */
+    private int searchSiblings(int[] columns, int from, int count, int alpha, int beta, int depthLeft) {
+        Search[] siblings = new Search[width];
+        List<ForkJoinTask<Integer>> tasks = new ArrayList<>(count - from);
+
+        byte coin = position.getCoinToMove();
+        int nullAlpha = alpha;
+
+        for (int i = from; i < count; i++) {
+            int column = columns[i];
+
+            Search sibling = new Search(this);
+            sibling.position.addCoin(column, coin);
+
+            siblings[column] = sibling;
+            tasks.add(ForkJoinTask.adapt(() -> -sibling.negamax(-nullAlpha - 1, -nullAlpha, depthLeft - 1)).fork());
+        }
+
+        int bestColumn = -1;
+        boolean cutoff = false;
+
+        for (int i = from; i < count; i++) {
+            int column = columns[i];
+            Search sibling = siblings[column];
+
+            int result = tasks.get(i - from).join();
+
+            // Siblings failing high on the null window might be better than the best so far
+            if (!sibling.isAborted() && !cutoff && result > nullAlpha && result < beta) {
+                researches++;
+                result = -sibling.negamax(-beta, -alpha, depthLeft - 1);
+            }
+
+            // Striped statistics of the sibling are merged once it is done
+            searchCount     += sibling.searchCount;
+            cacheHits       += sibling.cacheHits;
+            cacheMisses     += sibling.cacheMisses;
+            cacheCollisions += sibling.cacheCollisions;
+            cacheStores     += sibling.cacheStores;
+            cacheOverwrites += sibling.cacheOverwrites;
+            researches      += sibling.researches;
+            for (int depth = 0; depth < prunes.length; depth++) {
+                nodes[depth] += sibling.nodes[depth];
+                prunes[depth] += sibling.prunes[depth];
+                firstPrunes[depth] += sibling.firstPrunes[depth];
+            }
+
+            // Siblings stopped by a cutoff have no result, others were stopped from above
+            if (sibling.isAborted()) {
+                if (!cutoff) aborted = true;
+                continue;
+            }
+
+            if (bestColumn == -1 || result > splitResult) {
+                splitResult = result;
+                bestColumn = column;
+            }
+
+            alpha = Math.max(alpha, result);
+
+            // Stop the remaining siblings when one of them causes a cutoff
+            if (!cutoff && alpha >= beta) {
+                cutoff = true;
+
+                for (Search other : siblings) {
+                    if (other != null && other != sibling) other.stop();
+                }
+            }
+        }
+
+        return bestColumn;
+    }
+}
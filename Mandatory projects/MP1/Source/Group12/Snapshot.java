@@ -0,0 +1,73 @@
+package Group12;
+
+import Group12.GameBoard.Coin;
+
+/**
+ * Immutable copy of the coins on a board that fits in a long, by colour rather than from the point of view of a
+ * player, so any board of the same size can be restored to it. Two longs are all it takes, the column heights and
+ * the number of moves follow from them.
+ */
+public final class Snapshot {
+    private final int width, height;
+    private final long blueBoard;
+    private final long redBoard;
+
+    public Snapshot(int width, int height, long blueBoard, long redBoard) {
+        if (!Masks.fits(width, height))
+            throw new IllegalArgumentException("Board of " + width + "x" + height + " does not fit in a bitboard");
+
+        if ((blueBoard & redBoard) != 0)
+            throw new IllegalArgumentException("Cells hold a blue and a red coin at once");
+
+        this.width = width;
+        this.height = height;
+        this.blueBoard = blueBoard;
+        this.redBoard = redBoard;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getBlueBoard() {
+        return blueBoard;
+    }
+
+    public long getRedBoard() {
+        return redBoard;
+    }
+
+    public int getMoves() {
+        return Long.bitCount(blueBoard | redBoard);
+    }
+
+    public int getColumnHeight(int column) {
+        long columnMask = ((1L << height) - 1) << column * (height + 1);
+        return Long.bitCount((blueBoard | redBoard) & columnMask);
+    }
+
+    public byte getCoin(int column, int row) {
+        long coinMask = 1L << column * (height + 1) + row;
+
+        if ((blueBoard & coinMask) != 0) return Coin.BLUE;
+        if ((redBoard & coinMask) != 0) return Coin.RED;
+        return Coin.NONE;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof Snapshot))
+            return false;
+
+        Snapshot that = (Snapshot) o;
+        return width == that.width && height == that.height && blueBoard == that.blueBoard &&
+                redBoard == that.redBoard;
+    }
+
+    public int hashCode() {
+        return Long.hashCode(blueBoard * 31 + redBoard) * 31 + (width << 16 | height);
+    }
+}
@@ -0,0 +1,358 @@
+package Group12;
+
+/**
+ * Exact solver for the end of the game. Positions are given as the coins of the side to move and the mask of all
+ * coins, in the layout of Masks. Scores are positive if the side to move wins, negative if it loses and 0 for a
+ * draw; the faster the win, the larger the score.
+ */
+public class Solver {
+    private static final int CHECK_INTERVAL = 4096;
+
+    private final int width, height;
+    private final int maxMoves;
+    private final int columnBits;
+
+    private final Masks masks;
+    private final long bottomMask;
+    private final long boardMask;
+    private final long[] columnMasks;
+    private final long[] topMasks;
+    private final long[] bottomMasks;
+
+    // Column order, middle out
+    private final int[] columnOrder;
+
+    private final TranspositionTable cache;
+
+    // Move lists for every ply, so the search does not allocate
+    private final long[][] moveLists;
+    private final int[][] moveScores;
+
+    private int score;
+    private boolean exact;
+
+    private Deadline deadline = Deadline.never();
+    private boolean aborted;
+
+    long searchCount;
+
+    public Solver(Masks masks, int width, int height, int cacheMegabytes) {
+        this.width = width;
+        this.height = height;
+        this.maxMoves = width * height;
+        this.columnBits = height + 1;
+        this.masks = masks;
+
+        columnMasks = new long[width];
+        topMasks = new long[width];
+        bottomMasks = new long[width];
+
+        long bottom = 0, board = 0;
+        for (int column = 0; column < width; column++) {
+            bottomMasks[column] = masks.getCoinMask(column, 0);
+            topMasks[column] = masks.getCoinMask(column, height - 1);
+            columnMasks[column] = masks.getLineMask(column, 0, 1, 0, height);
+
+            bottom |= bottomMasks[column];
+            board |= columnMasks[column];
+        }
+        bottomMask = bottom;
+        boardMask = board;
+
+        columnOrder = new int[width];
+        for (int i = 0; i < width; i++) {
+            columnOrder[i] = width / 2 + (1 - 2 * (i % 2)) * (i + 1) / 2;
+        }
+
+        cache = new TranspositionTable(cacheMegabytes);
+
+        moveLists = new long[maxMoves + 1][width];
+        moveScores = new int[maxMoves + 1][width];
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Score of the column returned by the last call to bestColumn.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Whether the score of the last call to bestColumn is exact. If not, the deadline passed while the exact scores
+     * were searched and it only tells win (1) and loss (-1) apart.
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Number of plies until the game is decided for an exact score, including the winning move.
+     */
+    public int distance(int score, int moves) {
+        if (score == 0)
+            return maxMoves - moves;
+
+        return maxMoves + 2 - 2 * Math.abs(score) - moves;
+    }
+
+    /**
+     * Finds the best column for the side to move, or -1 if the deadline passed before every
+     * column was at least weakly solved. Columns are first weakly solved, then the best ones are solved exactly
+     * to pick the fastest win or slowest loss, if there is time left.
+     */
+    public int bestColumn(long current, long mask, int moves, Deadline deadline) {
+        this.deadline = deadline;
+        this.aborted = false;
+        this.exact = false;
+        this.searchCount = 0;
+
+        int[] results = new int[width];
+        int bestColumn = -1;
+
+        // On a symmetric board the left half mirrors the right half
+        boolean symmetric = masks.mirror(mask) == mask && masks.mirror(current) == current;
+
+        for (int column : columnOrder) {
+            results[column] = Integer.MIN_VALUE;
+            if (!canPlay(mask, column) || symmetric && column < width - column - 1)
+                continue;
+
+            if (isWinningMove(current, mask, column))
+                results[column] = 1;
+            else
+                results[column] = -solve(current ^ mask, mask | move(mask, column), moves + 1, true);
+
+            if (aborted)
+                return -1;
+
+            if (bestColumn == -1 || results[column] > results[bestColumn])
+                bestColumn = column;
+        }
+
+        // A draw is as exact as it gets
+        score = results[bestColumn];
+        if (score == 0) {
+            exact = true;
+            return bestColumn;
+        }
+
+        // Exact scores of the columns that are as good as the best one
+        int weakScore = score;
+        int exactColumn = -1;
+        int exactScore = Integer.MIN_VALUE;
+
+        for (int column : columnOrder) {
+            if (results[column] != weakScore)
+                continue;
+
+            int exact;
+            if (isWinningMove(current, mask, column))
+                exact = (maxMoves + 1 - moves) / 2;
+            else
+                exact = -solve(current ^ mask, mask | move(mask, column), moves + 1, false);
+
+            if (aborted)
+                break;
+
+            if (exact > exactScore) {
+                exactScore = exact;
+                exactColumn = column;
+            }
+        }
+
+        if (aborted) {
+            aborted = false;
+            return bestColumn;
+        }
+
+        score = exactScore;
+        exact = true;
+        return exactColumn;
+    }
+
+    /**
+     * Solves the position with a sequence of null window searches. The weak solver only tells win, draw or loss
+     * apart and returns -1, 0 or 1.
+     */
+    public int solve(long current, long mask, int moves, boolean weak) {
+        if (moves == maxMoves)
+            return 0;
+
+        if (canWinNext(current, mask))
+            return weak ? 1 : (maxMoves + 1 - moves) / 2;
+
+        int min = weak ? -1 : -(maxMoves - moves) / 2;
+        int max = weak ? 1 : (maxMoves + 1 - moves) / 2;
+
+        // Binary search on the score, biased towards 0 where most positions end up
+        while (min < max && !aborted) {
+            int med = min + (max - min) / 2;
+            if (med <= 0 && min / 2 < med) med = min / 2;
+            else if (med >= 0 && max / 2 > med) med = max / 2;
+
+            int result = negamax(current, mask, moves, med, med + 1);
+            if (result <= med) max = result;
+            else min = result;
+        }
+
+        return weak ? Integer.signum(min) : min;
+    }
+
+    private int negamax(long current, long mask, int moves, int alpha, int beta) {
+        if (++searchCount % CHECK_INTERVAL == 0 && deadline.hasPassed())
+            aborted = true;
+
+        if (aborted)
+            return 0;
+
+        // Only moves that do not give the opponent an immediate win are worth looking at
+        long next = possibleNonLosingMoves(current, mask);
+        if (next == 0)
+            return -(maxMoves - moves) / 2;
+
+        // Nobody can win any more when only two moves are left
+        if (moves >= maxMoves - 2)
+            return 0;
+
+        int min = -(maxMoves - 2 - moves) / 2;
+        if (alpha < min) {
+            alpha = min;
+            if (alpha >= beta) return alpha;
+        }
+
+        int max = (maxMoves - 1 - moves) / 2;
+        if (beta > max) {
+            beta = max;
+            if (alpha >= beta) return beta;
+        }
+
+        long key = (current + mask) * 0x9E3779B97F4A7C15L;
+        long entry = cache.probe(key);
+        if (entry != 0) {
+            int value = TranspositionTable.value(entry);
+
+            if (TranspositionTable.bound(entry) == TranspositionTable.UPPER) {
+                if (beta > value) {
+                    beta = value;
+                    if (alpha >= beta) return beta;
+                }
+            } else {
+                if (alpha < value) {
+                    alpha = value;
+                    if (alpha >= beta) return alpha;
+                }
+            }
+        }
+
+        // Try the moves creating the most threats first, middle columns first among equals
+        long[] moveList = moveLists[moves];
+        int[] scores = moveScores[moves];
+        int count = 0;
+
+        for (int i = width - 1; i >= 0; i--) {
+            long move = next & columnMasks[columnOrder[i]];
+            if (move == 0)
+                continue;
+
+            int threats = Long.bitCount(winningPositions(current | move, mask));
+
+            int j = count++;
+            for (; j > 0 && scores[j - 1] > threats; j--) {
+                moveList[j] = moveList[j - 1];
+                scores[j] = scores[j - 1];
+            }
+            moveList[j] = move;
+            scores[j] = threats;
+        }
+
+        for (int i = count - 1; i >= 0; i--) {
+            long move = moveList[i];
+            int score = -negamax(current ^ mask, mask | move, moves + 1, -beta, -alpha);
+
+            if (aborted)
+                return 0;
+
+            if (score >= beta) {
+                cache.store(key, score, TranspositionTable.LOWER, 0, TranspositionTable.NO_MOVE);
+                return score;
+            }
+
+            if (score > alpha)
+                alpha = score;
+        }
+
+        cache.store(key, alpha, TranspositionTable.UPPER, 0, TranspositionTable.NO_MOVE);
+        return alpha;
+    }
+
+    private long move(long mask, int column) {
+        return (mask + bottomMasks[column]) & columnMasks[column];
+    }
+
+    private boolean canPlay(long mask, int column) {
+        return (mask & topMasks[column]) == 0;
+    }
+
+    private boolean isWinningMove(long current, long mask, int column) {
+        return (winningPositions(current, mask) & possible(mask) & columnMasks[column]) != 0;
+    }
+
+    private boolean canWinNext(long current, long mask) {
+        return (winningPositions(current, mask) & possible(mask)) != 0;
+    }
+
+    private long possible(long mask) {
+        return (mask + bottomMask) & boardMask;
+    }
+
+    private long possibleNonLosingMoves(long current, long mask) {
+        long possible = possible(mask);
+        long opponentWins = winningPositions(current ^ mask, mask);
+        long forced = possible & opponentWins;
+
+        if (forced != 0) {
+            // Two threats at once can not both be blocked
+            if ((forced & (forced - 1)) != 0)
+                return 0;
+
+            possible = forced;
+        }
+
+        // Never play right below a cell where the opponent would win
+        return possible & ~(opponentWins >>> 1);
+    }
+
+    /**
+     * Empty cells that would complete a line of four for the given coins.
+     */
+    private long winningPositions(long coins, long mask) {
+        // Vertical
+        long result = (coins << 1) & (coins << 2) & (coins << 3);
+
+        // Horizontal and both diagonals
+        result |= winningPositions(coins, columnBits);
+        result |= winningPositions(coins, columnBits - 1);
+        result |= winningPositions(coins, columnBits + 1);
+
+        return result & (boardMask ^ mask);
+    }
+
+    private static long winningPositions(long coins, int shift) {
+        long result;
+        long pairs;
+
+        pairs = (coins << shift) & (coins << 2 * shift);
+        result = pairs & (coins << 3 * shift);
+        result |= pairs & (coins >>> shift);
+
+        pairs = (coins >>> shift) & (coins >>> 2 * shift);
+        result |= pairs & (coins << shift);
+        result |= pairs & (coins >>> 3 * shift);
+
+        return result;
+    }
+}
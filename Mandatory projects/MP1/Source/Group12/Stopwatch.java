@@ -8,10 +8,18 @@ public class Stopwatch {
     } 
 
     public long elapsed() {
-        return System.currentTimeMillis() - start;
+        return elapsedNanos() / 1000000;
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - start;
+    }
+
+    public long getStart() {
+        return start;
     }
 
     public void reset() {
-        start = System.currentTimeMillis();
+        start = System.nanoTime();
     }
 }
\ No newline at end of file
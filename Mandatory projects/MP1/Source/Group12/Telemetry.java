@@ -0,0 +1,296 @@
+package Group12;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Search metrics of all game boards in the process, totalled over their moves: nodes by depth, cache hit,
+ * collision and overwrite rates and a histogram of move latencies, next to the statistics of the last move.
+ * They are exposed as an MBean and, if a file is given, appended to it as one JSON object per move.
+ *
+ * Off unless the system property fourconnect.telemetry is set or fourconnect.telemetry.log names the log file. Boards
+ * report every move once it is decided, and the search only keeps the counters the telemetry needs while it is
+ * on, so a disabled telemetry costs a null check per move.
+ */
+public class Telemetry implements TelemetryMBean {
+    public static final String OBJECT_NAME = "Group12:type=Telemetry";
+
+    // System properties turning the telemetry on and naming its log, under the prefix of GameBoard's properties
+    public static final String PROPERTY = "fourconnect.telemetry";
+    public static final String LOG_PROPERTY = "fourconnect.telemetry.log";
+
+    // Upper bounds of the latency histogram's buckets in ms, the last one catching everything slower
+    private static final long[] LATENCY_BUCKETS = {
+        1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, Long.MAX_VALUE
+    };
+
+    private static final int MAX_DEPTH = 64;
+
+    // Constant for the JIT, so the counters the search keeps only for the telemetry cost nothing when it is off
+    public static final boolean ENABLED =
+            System.getProperty(LOG_PROPERTY) != null || Boolean.getBoolean(PROPERTY);
+
+    private static final Telemetry INSTANCE = ENABLED ? create() : null;
+
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder bookMoves = new LongAdder();
+    private final LongAdder solvedMoves = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder cacheCollisions = new LongAdder();
+    private final LongAdder cacheStores = new LongAdder();
+    private final LongAdder cacheOverwrites = new LongAdder();
+
+    private final AtomicLongArray nodesByDepth = new AtomicLongArray(MAX_DEPTH);
+    private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS.length);
+
+    // Statistics are not changed once their move is decided
+    private volatile GameBoard.Statistics last;
+
+    private final BufferedWriter log;
+
+    private Telemetry(BufferedWriter log) {
+        this.log = log;
+    }
+
+    /**
+     * Returns the telemetry of the process, or null if it is disabled.
+     */
+    public static Telemetry get() {
+        return INSTANCE;
+    }
+
+    private static Telemetry create() {
+        String path = System.getProperty(LOG_PROPERTY);
+
+        BufferedWriter log = null;
+        try {
+            if (path != null)
+                log = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open the telemetry log " + path, e);
+        }
+
+        Telemetry telemetry = new Telemetry(log);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(telemetry, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            throw new RuntimeException("Could not register the telemetry MBean", e);
+        }
+
+        return telemetry;
+    }
+
+    /**
+     * Adds a decided move to the totals and the log. The position is the one the move was decided in.
+     */
+    void record(int width, int height, int moves, GameBoard.Statistics statistics) {
+        this.moves.increment();
+        if (statistics.book) bookMoves.increment();
+        if (statistics.solved) solvedMoves.increment();
+
+        nodes.add((long) (statistics.mnodes * 1000000));
+        cacheHits.add(statistics.cacheHits);
+        cacheMisses.add(statistics.cacheMisses);
+        cacheCollisions.add(statistics.cacheCollisions);
+        cacheStores.add(statistics.cacheStores);
+        cacheOverwrites.add(statistics.cacheOverwrites);
+
+        for (int depth = 0; depth < statistics.nodes.length && depth < MAX_DEPTH; depth++) {
+            if (statistics.nodes[depth] != 0)
+                nodesByDepth.addAndGet(depth, statistics.nodes[depth]);
+        }
+
+        int bucket = 0;
+        while (statistics.elapsed > LATENCY_BUCKETS[bucket]) bucket++;
+        latencies.incrementAndGet(bucket);
+
+        last = statistics;
+
+        if (log != null)
+            write(toJson(width, height, moves, statistics));
+    }
+
+    private void write(String line) {
+        // Flushed line by line, so the log is complete up to the last move however the process ends
+        synchronized (log) {
+            try {
+                log.write(line);
+                log.newLine();
+                log.flush();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write the telemetry log", e);
+            }
+        }
+    }
+
+    private static String toJson(int width, int height, int moves, GameBoard.Statistics statistics) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("{\"time\":").append(System.currentTimeMillis());
+        sb.append(",\"width\":").append(width);
+        sb.append(",\"height\":").append(height);
+        sb.append(",\"moves\":").append(moves);
+        sb.append(",\"column\":").append(statistics.column);
+        sb.append(",\"book\":").append(statistics.book);
+        sb.append(",\"solved\":").append(statistics.solved);
+        sb.append(",\"depth\":").append(statistics.depth);
+        sb.append(",\"threads\":").append(statistics.threads);
+        sb.append(",\"elapsedMs\":").append(statistics.elapsed);
+        sb.append(",\"budgetMs\":").append(statistics.budget);
+        sb.append(",\"ponderDepth\":").append(statistics.ponderDepth);
+        sb.append(",\"mnodes\":").append(format(statistics.mnodes));
+        sb.append(",\"mnodesPerSec\":").append(format(statistics.mnodesPerSec));
+        sb.append(",\"branchingFactor\":").append(format(statistics.branchingFactor()));
+        sb.append(",\"cacheHitRate\":").append(format(rate(statistics.cacheHits, statistics.cacheMisses)));
+        sb.append(",\"cacheCollisionRate\":").append(format(fraction(statistics.cacheCollisions, statistics.cacheMisses)));
+        sb.append(",\"cacheOverwriteRate\":").append(format(fraction(statistics.cacheOverwrites, statistics.cacheStores)));
+
+        // Both by depth, nodes by the depth left and iterations by the depth they searched to
+        sb.append(",\"nodesByDepth\":[");
+        int last = statistics.nodes.length - 1;
+        while (last > 0 && statistics.nodes[last] == 0) last--;
+        for (int depth = 0; depth <= last; depth++) {
+            if (depth > 0) sb.append(',');
+            sb.append(statistics.nodes[depth]);
+        }
+
+        sb.append("],\"iterationMs\":[");
+        for (int depth = 0; depth <= statistics.depth && depth < statistics.iterationMillis.length; depth++) {
+            if (depth > 0) sb.append(',');
+            sb.append(format(statistics.iterationMillis[depth]));
+        }
+        sb.append("]}");
+
+        return sb.toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static double rate(long hits, long misses) {
+        return fraction(hits, hits + misses);
+    }
+
+    private static double fraction(long part, long total) {
+        return total == 0 ? 0 : (double) part / total;
+    }
+
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    public long getBookMoves() {
+        return bookMoves.sum();
+    }
+
+    public long getSolvedMoves() {
+        return solvedMoves.sum();
+    }
+
+    public double getMnodes() {
+        return nodes.sum() / 1e6;
+    }
+
+    public double getCacheHitRate() {
+        return rate(cacheHits.sum(), cacheMisses.sum());
+    }
+
+    /**
+     * Fraction of the cache misses where both entries of the bucket held other positions.
+     */
+    public double getCacheCollisionRate() {
+        return fraction(cacheCollisions.sum(), cacheMisses.sum());
+    }
+
+    /**
+     * Fraction of the stores that replaced an entry of another position stored during the same move.
+     */
+    public double getCacheOverwriteRate() {
+        return fraction(cacheOverwrites.sum(), cacheStores.sum());
+    }
+
+    /**
+     * Nodes searched by the depth left to search below them, so index 0 counts the leaves.
+     */
+    public long[] getNodesByDepth() {
+        return toArray(nodesByDepth);
+    }
+
+    public long[] getLatencyBucketMillis() {
+        return LATENCY_BUCKETS.clone();
+    }
+
+    /**
+     * Moves by latency, counted in the first bucket of getLatencyBucketMillis at least as slow as them.
+     */
+    public long[] getLatencyHistogram() {
+        return toArray(latencies);
+    }
+
+    public int getLastDepth() {
+        GameBoard.Statistics statistics = last;
+        return statistics == null ? 0 : statistics.depth;
+    }
+
+    public long getLastElapsedMillis() {
+        GameBoard.Statistics statistics = last;
+        return statistics == null ? 0 : statistics.elapsed;
+    }
+
+    public double getLastMnodesPerSec() {
+        GameBoard.Statistics statistics = last;
+        return statistics == null ? 0 : statistics.mnodesPerSec;
+    }
+
+    public double getLastBranchingFactor() {
+        GameBoard.Statistics statistics = last;
+        return statistics == null ? 0 : statistics.branchingFactor();
+    }
+
+    public double[] getLastIterationMillis() {
+        GameBoard.Statistics statistics = last;
+        if (statistics == null)
+            return new double[0];
+
+        double[] millis = new double[Math.min(statistics.depth + 1, statistics.iterationMillis.length)];
+        for (int depth = 0; depth < millis.length; depth++) {
+            millis[depth] = statistics.iterationMillis[depth];
+        }
+        return millis;
+    }
+
+    public void reset() {
+        for (LongAdder adder : new LongAdder[] { moves, bookMoves, solvedMoves, nodes, cacheHits, cacheMisses,
+                cacheCollisions, cacheStores, cacheOverwrites }) {
+            adder.reset();
+        }
+
+        for (int i = 0; i < nodesByDepth.length(); i++) nodesByDepth.set(i, 0);
+        for (int i = 0; i < latencies.length(); i++) latencies.set(i, 0);
+
+        last = null;
+    }
+
+    private static long[] toArray(AtomicLongArray array) {
+        long[] values = new long[array.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.get(i);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,38 @@
+package Group12;
+
+/**
+ * Management interface of Telemetry, as seen in JConsole or any other JMX client under Group12:type=Telemetry.
+ */
+public interface TelemetryMBean {
+    long getMoves();
+
+    long getBookMoves();
+
+    long getSolvedMoves();
+
+    double getMnodes();
+
+    double getCacheHitRate();
+
+    double getCacheCollisionRate();
+
+    double getCacheOverwriteRate();
+
+    long[] getNodesByDepth();
+
+    long[] getLatencyBucketMillis();
+
+    long[] getLatencyHistogram();
+
+    int getLastDepth();
+
+    long getLastElapsedMillis();
+
+    double getLastMnodesPerSec();
+
+    double getLastBranchingFactor();
+
+    double[] getLastIterationMillis();
+
+    void reset();
+}
@@ -0,0 +1,38 @@
+package Group12;
+
+/**
+ * Decides how long GameBoard searches for a move. Times are in nanoseconds of System.nanoTime.
+ */
+public interface TimeManager {
+    /**
+     * Called when the search for a move starts, with the number of coins on the board.
+     */
+    void startMove(long start, int moves, int maxMoves);
+
+    /**
+     * Time the move should take, the search stops deepening once the next iteration is predicted to exceed it.
+     */
+    long getBudget();
+
+    /**
+     * Time at which the search is aborted, even in the middle of an iteration.
+     */
+    long getDeadline();
+
+    /**
+     * Called after each iteration of the deepening search with its duration and the time used so far,
+     * returns whether the next iteration should be started.
+     */
+    boolean shouldDeepen(long iteration, long elapsed);
+
+    /**
+     * Called when the move is decided, with the time it took.
+     */
+    void endMove(long elapsed);
+
+    /**
+     * Called when the board the manager belongs to starts a new game.
+     */
+    default void newGame() {
+    }
+}
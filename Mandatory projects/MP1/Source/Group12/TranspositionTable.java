@@ -0,0 +1,151 @@
+package Group12;
+
+import java.util.Arrays;
+
+public class TranspositionTable {
+    public static final int EXACT = 0;
+    public static final int LOWER = 1;
+    public static final int UPPER = 2;
+
+    public static final int NO_MOVE = 0xFF;
+
+    // Two entries per bucket (depth-preferred, always-replace) of two longs each (key ^ data, data).
+    // Storing the key xor'ed with the data lets concurrent searches share the table without locks,
+    // as an entry torn by two racing writes no longer matches its key.
+    private static final int BUCKET_LONGS = 4;
+    private static final int BUCKET_BYTES = BUCKET_LONGS * 8;
+    private static final int MAX_BUCKETS = 1 << 28;
+
+    private static final long VALID = 1L << 63;
+
+    private final long[] table;
+    private final int bucketMask;
+
+    private int generation = 0;
+
+    public TranspositionTable(int megabytes) {
+        long buckets = Math.max(1, (long) megabytes * 1024 * 1024 / BUCKET_BYTES);
+        buckets = Math.min(MAX_BUCKETS, Long.highestOneBit(buckets));
+
+        this.table = new long[(int) buckets * BUCKET_LONGS];
+        this.bucketMask = (int) buckets - 1;
+    }
+
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        generation = 0;
+    }
+
+    /**
+     * Returns the packed data of the entry stored for the key, or 0 if there is none.
+     */
+    public long probe(long key) {
+        int index = bucket(key);
+
+        long data = table[index + 1];
+        if (data != 0 && (table[index] ^ data) == key)
+            return data;
+
+        data = table[index + 3];
+        if (data != 0 && (table[index + 2] ^ data) == key)
+            return data;
+
+        return 0;
+    }
+
+    /**
+     * Stores the entry and returns whether it replaced an entry of another position stored by the current search.
+     */
+    public boolean store(long key, int value, int bound, int depth, int move) {
+        int index = bucket(key);
+        long data = pack(value, bound, depth, move);
+
+        // Replace the depth-preferred entry if it is the same position, shallower or from an older search
+        long preferred = table[index + 1];
+        boolean same = (table[index] ^ preferred) == key;
+        if (same || preferred == 0 || depth(preferred) <= depth || generation(preferred) != generation) {
+            table[index]     = key ^ data;
+            table[index + 1] = data;
+
+            return !same && preferred != 0 && generation(preferred) == generation;
+        }
+
+        long always = table[index + 3];
+        boolean overwritten = always != 0 && (table[index + 2] ^ always) != key && generation(always) == generation;
+
+        table[index + 2] = key ^ data;
+        table[index + 3] = data;
+
+        return overwritten;
+    }
+
+    /**
+     * Whether both entries of the key's bucket hold other positions, so storing the key pushes one of them out.
+     */
+    public boolean collides(long key) {
+        int index = bucket(key);
+        long preferred = table[index + 1];
+        long always    = table[index + 3];
+
+        return preferred != 0 && (table[index] ^ preferred) != key && always != 0 && (table[index + 2] ^ always) != key;
+    }
+
+    /**
+     * Samples the first buckets of the table and returns the permille of entries used by the current search.
+     */
+    public int fill() {
+        int samples = Math.min(500, bucketMask + 1);
+        int used = 0;
+
+        for (int i = 0; i < samples; i++) {
+            long preferred = table[i * BUCKET_LONGS + 1];
+            long always    = table[i * BUCKET_LONGS + 3];
+
+            if (preferred != 0 && generation(preferred) == generation) used++;
+            if (always    != 0 && generation(always)    == generation) used++;
+        }
+
+        return used * 1000 / (samples * 2);
+    }
+
+    public int capacity() {
+        return table.length / 2;
+    }
+
+    public static int value(long data) {
+        return (int) data;
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> 32) & 0x3;
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> 34) & 0xFF;
+    }
+
+    public static int move(long data) {
+        return (int) (data >>> 42) & 0xFF;
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> 50) & 0xFF;
+    }
+
+    private long pack(int value, int bound, int depth, int move) {
+        return VALID
+                | (long) generation << 50
+                | (long) (move & 0xFF) << 42
+                | (long) Math.min(depth, 0xFF) << 34
+                | (long) bound << 32
+                | (value & 0xFFFFFFFFL);
+    }
+
+    private int bucket(long key) {
+        return ((int) (key ^ (key >>> 32)) & bucketMask) * BUCKET_LONGS;
+    }
+}
@@ -0,0 +1,44 @@
+package Group12;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class Zobrist {
+    private static final long SEED = 0x5EED_1234_ABCDL;
+
+    private static final ConcurrentHashMap<Integer, Zobrist> SHARED = new ConcurrentHashMap<>();
+
+    private final int width;
+    private final int height;
+
+    // Indexed by coin (0 = player, 1 = opponent), then column * height + row
+    private final long[][] keys;
+
+    public Zobrist(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        Random random = new Random(SEED);
+        keys = new long[2][width * height];
+        for (int coin = 0; coin < 2; coin++) {
+            for (int i = 0; i < width * height; i++) {
+                keys[coin][i] = random.nextLong();
+            }
+        }
+    }
+
+    /**
+     * Returns the keys of the size, shared by every board of it.
+     */
+    public static Zobrist forSize(int width, int height) {
+        return SHARED.computeIfAbsent(width << 16 | height, size -> new Zobrist(width, height));
+    }
+
+    public long key(int coin, int column, int row) {
+        return keys[coin][column * height + row];
+    }
+
+    public long mirrorKey(int coin, int column, int row) {
+        return keys[coin][(width - column - 1) * height + row];
+    }
+}
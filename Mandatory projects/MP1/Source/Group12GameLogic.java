@@ -1,40 +1,116 @@
 import Group12.*;
 
+import java.util.concurrent.CompletableFuture;
+
 public class Group12GameLogic implements IGameLogic {
+    // System property with the number of finished games' boards kept for the next games
+    public static final String POOL_SIZE_PROPERTY = "fourconnect.poolSize";
+
+    // Boards of finished games, whose caches the next games reuse
+    private static final EnginePool POOL = new EnginePool(Integer.getInteger(POOL_SIZE_PROPERTY, 2));
+
     private int x = 0;
     private int y = 0;
     private int playerID;
 
     private GameBoard board;
 
+    // Result of the game once it is over and the board has gone back to the pool
+    private Winner result = Winner.NOT_FINISHED;
+
+    // Thread of the last asynchronous search, which may still be stopping after a cancel
+    private Thread searchThread;
+
     public void initializeGame(int x, int y, int playerID) {
         this.x = x;
         this.y = y;
         this.playerID = playerID;
 
-        board = new GameBoard(x, y, playerID);
+        endGame();
+        board = POOL.acquire(x, y, playerID);
+        result = Winner.NOT_FINISHED;
+    }
+
+    public void endGame() {
+        awaitSearch();
+        if (board == null)
+            return;
+
+        POOL.release(board);
+        board = null;
     }
 	
     public Winner gameFinished() {
+        awaitSearch();
+        if (board == null)
+            return result;
+
         switch (board.getWinner()) {
             case NONE:
                 return Winner.NOT_FINISHED;
             case BLUE:
-                return Winner.PLAYER1;
+                result = Winner.PLAYER1;
+                break;
             case RED:
-                return Winner.PLAYER2;
+                result = Winner.PLAYER2;
+                break;
             case TIE:
-                return Winner.TIE;
+                result = Winner.TIE;
+                break;
             default:
                 throw new RuntimeException();
         }
+
+        // The board is not needed any more, so the next game can have it even if nobody calls endGame
+        endGame();
+        return result;
     }
 
     public void insertCoin(int column, int playerID) {
+        awaitSearch();
         board.insertCoin(column, playerID);
     }
 
     public int decideNextMove() {
+        awaitSearch();
         return board.decideNextMove();
     }
+
+    public CompletableFuture<Integer> decideNextMoveAsync(long deadline, ProgressListener listener) {
+        awaitSearch();
+
+        Deadline searchDeadline = new Deadline(deadline);
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        // Cancelling the future only makes the search return early
+        future.whenComplete((column, error) -> {
+            if (future.isCancelled())
+                searchDeadline.cancel();
+        });
+
+        GameBoard.ProgressListener progress = listener == null ? null : listener::update;
+        searchThread = new Thread(() -> {
+            try {
+                future.complete(board.decideNextMove(searchDeadline, progress));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, "Group12-search");
+        searchThread.setDaemon(true);
+        searchThread.start();
+
+        return future;
+    }
+
+    private void awaitSearch() {
+        if (searchThread == null)
+            return;
+
+        try {
+            searchThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        searchThread = null;
+    }
 }
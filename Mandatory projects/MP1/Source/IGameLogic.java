@@ -1,3 +1,5 @@
+import java.util.concurrent.CompletableFuture;
+
 /**
  *
  * @author Kevin Tierney
@@ -11,6 +13,13 @@ public interface IGameLogic {
 
     public enum Winner {PLAYER1, PLAYER2, TIE, NOT_FINISHED}
 
+    /**
+     * Receives the best move found so far while a move is being decided.
+     */
+    public interface ProgressListener {
+        void update(int column, int depth);
+    }
+
     /**
      * Creates a new empty game board of the specified dimensions
      * and indicates the ID of the player. 
@@ -35,6 +44,20 @@ public interface IGameLogic {
      * implement/call your heuristic evaluation functions etc. 
      */
     int decideNextMove();
+
+    /**
+     * Decides the next move in the background. The logic should return its best move
+     * once the deadline passes, and stop as soon as possible when the future is cancelled.
+     * Calls changing the board may follow a cancel right away,
+     * so the logic has to wait for a cancelled search to stop first.
+     * The default implementation runs decideNextMove and can neither be cancelled nor report progress.
+     * @param deadline The System.nanoTime by which the move has to be decided
+     * @param listener Receives intermediate best moves, may be null
+     * @return The column of the move
+     */
+    default CompletableFuture<Integer> decideNextMoveAsync(long deadline, ProgressListener listener) {
+        return CompletableFuture.supplyAsync(this::decideNextMove);
+    }
 	
 	
     /**
@@ -42,4 +65,12 @@ public interface IGameLogic {
      * @return Winner enum
      */
     Winner gameFinished();
+
+    /**
+     * Notifies that the game is over, also when it was cut short, so the logic can give back what it holds,
+     * like search threads. The logic is not used again until the next initializeGame.
+     * The default implementation does nothing.
+     */
+    default void endGame() {
+    }
 }
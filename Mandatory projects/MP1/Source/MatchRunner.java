@@ -0,0 +1,387 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays two game logics against each other without the GUI, many games at once, and reports the results from
+ * the point of view of the first one: wins, draws and losses per board size, an Elo estimate and the latency of
+ * decideNextMove. Games come in pairs that start with the same random opening, once with each logic starting.
+ */
+public class MatchRunner {
+    // System property telling engines that support it how long they may take per move, in ms
+    public static final String MOVE_TIME_PROPERTY = "fourconnect.moveTime";
+
+    // System property telling engines that support it how many threads to search with
+    public static final String SEARCH_THREADS_PROPERTY = "fourconnect.searchThreads";
+
+    // System property telling engines that support it whether to print their statistics on every move
+    public static final String STATISTICS_PROPERTY = "fourconnect.statistics";
+
+    private static final int LOSS = 0, DRAW = 1, WIN = 2;
+
+    private final String logicA, logicB;
+    private final int games;
+    private final int threads;
+    private final long moveTime;
+    private final int openingPlies;
+    private final int[][] sizes;
+
+    public MatchRunner(String logicA, String logicB, int games, int threads, long moveTime, int openingPlies,
+                       int[][] sizes) {
+        this.logicA = logicA;
+        this.logicB = logicB;
+        this.games = games;
+        this.threads = threads;
+        this.moveTime = moveTime;
+        this.openingPlies = openingPlies;
+        this.sizes = sizes;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 2) {
+            printHelp();
+            System.exit(1);
+        }
+
+        int games = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long moveTime = 0;
+        int openingPlies = 2;
+        boolean verbose = false;
+        List<int[]> sizes = new ArrayList<>();
+
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "-games":
+                    games = Integer.parseInt(args[++i]);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-time":
+                    moveTime = Long.parseLong(args[++i]);
+                    break;
+                case "-opening":
+                    openingPlies = Integer.parseInt(args[++i]);
+                    break;
+                case "-size":
+                    for (String size : args[++i].split(",")) {
+                        String[] dimensions = size.split("x");
+                        sizes.add(new int[] { Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]) });
+                    }
+                    break;
+                case "-verbose":
+                    verbose = true;
+                    break;
+                default:
+                    printHelp();
+                    System.exit(1);
+            }
+        }
+
+        if (sizes.isEmpty())
+            sizes.add(new int[] { 7, 6 });
+
+        if (moveTime > 0)
+            System.setProperty(MOVE_TIME_PROPERTY, Long.toString(moveTime));
+
+        // Games played at the same time already use the processors, engines searching on all of them would only
+        // measure how the scheduler shares them out
+        if (threads > 1 && System.getProperty(SEARCH_THREADS_PROPERTY) == null)
+            System.setProperty(SEARCH_THREADS_PROPERTY, "1");
+
+        if (System.getProperty(STATISTICS_PROPERTY) == null)
+            System.setProperty(STATISTICS_PROPERTY, Boolean.toString(verbose));
+
+        MatchRunner runner = new MatchRunner(args[0], args[1], games, threads, moveTime, openingPlies,
+                sizes.toArray(new int[0][]));
+        System.out.print(runner.run());
+    }
+
+    public static void printHelp() {
+        System.err.println("Usage: java MatchRunner GameLogic1 GameLogic2 [options]");
+        System.err.println("\t-games n\t - Games per board size, played in pairs with swapped colours (100).");
+        System.err.println("\t-threads n\t - Games played at the same time (number of processors).");
+        System.err.println("\t\t\t   With more than one, engines search on one thread each.");
+        System.err.println("\t-time ms\t - Time per move, exceeding it loses the game (no limit).");
+        System.err.println("\t-opening n\t - Random plies every pair of games starts with (2).");
+        System.err.println("\t-size WxH,...\t - Board sizes to play on (7x6).");
+        System.err.println("\t-verbose\t - Let engines that support it print their statistics on every move.");
+    }
+
+    /**
+     * Plays all games and returns the report.
+     */
+    public String run() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Random random = new Random(games);
+
+        List<Future<Game>> futures = new ArrayList<>();
+        for (int[] size : sizes) {
+            int[] opening = null;
+
+            for (int i = 0; i < games; i++) {
+                if (i % 2 == 0)
+                    opening = randomOpening(random, size[0], size[1]);
+
+                Game game = new Game(size[0], size[1], i % 2 == 0, opening);
+                futures.add(pool.submit(() -> play(game)));
+            }
+        }
+
+        List<Game> results = new ArrayList<>();
+        int errors = 0;
+        for (Future<Game> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                errors++;
+                e.getCause().printStackTrace();
+            }
+        }
+        pool.shutdown();
+
+        return report(results, errors);
+    }
+
+    private int[] randomOpening(Random random, int width, int height) {
+        // Too few coins for anyone to win as long as the opening is shorter than seven plies
+        int[] heights = new int[width];
+        int[] opening = new int[Math.min(openingPlies, 6)];
+
+        for (int i = 0; i < opening.length; i++) {
+            int column;
+            do {
+                column = random.nextInt(width);
+            } while (heights[column] == height);
+
+            heights[column]++;
+            opening[i] = column;
+        }
+
+        return opening;
+    }
+
+    private Game play(Game game) throws Exception {
+        IGameLogic a = ShowGame.parseGameLogicParam(logicA);
+        IGameLogic b = ShowGame.parseGameLogicParam(logicB);
+        if (a == null || b == null)
+            throw new IllegalArgumentException("Both players have to be game logics");
+
+        IGameLogic[] players = game.aFirst ? new IGameLogic[] { a, b } : new IGameLogic[] { b, a };
+        try {
+            players[0].initializeGame(game.width, game.height, 1);
+            players[1].initializeGame(game.width, game.height, 2);
+
+            return play(game, players);
+        } finally {
+            a.endGame();
+            b.endGame();
+        }
+    }
+
+    private Game play(Game game, IGameLogic[] players) {
+        int[][] board = new int[game.width][game.height];
+        int[] heights = new int[game.width];
+        int player = 1;
+
+        for (int moves = 0; moves < game.width * game.height; moves++) {
+            boolean isA = (player == 1) == game.aFirst;
+            int column;
+
+            if (moves < game.opening.length) {
+                column = game.opening[moves];
+            } else {
+                long start = System.nanoTime();
+                column = players[player - 1].decideNextMove();
+                long latency = System.nanoTime() - start;
+
+                (isA ? game.latenciesA : game.latenciesB).add(latency);
+
+                if (moveTime > 0 && latency > moveTime * 1000000) {
+                    game.finish(isA ? LOSS : WIN, "time");
+                    return game;
+                }
+            }
+
+            if (column < 0 || column >= game.width || heights[column] == game.height) {
+                game.finish(isA ? LOSS : WIN, "illegal move");
+                return game;
+            }
+
+            board[column][heights[column]++] = player;
+            players[0].insertCoin(column, player);
+            players[1].insertCoin(column, player);
+
+            if (connectsFour(board, column, heights[column] - 1)) {
+                game.finish(isA ? WIN : LOSS, null);
+                return game;
+            }
+
+            player = 3 - player;
+        }
+
+        game.finish(DRAW, null);
+        return game;
+    }
+
+    /**
+     * Whether the coin at the cell is part of a line of four, checked by the runner itself rather than trusting
+     * the game logics.
+     */
+    private static boolean connectsFour(int[][] board, int column, int row) {
+        int[][] directions = { { 1, 0 }, { 0, 1 }, { 1, 1 }, { 1, -1 } };
+
+        for (int[] direction : directions) {
+            int count = 1;
+            for (int sign = -1; sign <= 1; sign += 2) {
+                int c = column + sign * direction[0];
+                int r = row + sign * direction[1];
+
+                while (c >= 0 && c < board.length && r >= 0 && r < board[0].length &&
+                        board[c][r] == board[column][row]) {
+                    count++;
+                    c += sign * direction[0];
+                    r += sign * direction[1];
+                }
+            }
+
+            if (count >= 4)
+                return true;
+        }
+
+        return false;
+    }
+
+    private String report(List<Game> results, int errors) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(String.format("%s vs %s, %d games per size, %s per move%n%n", logicA, logicB, games,
+                moveTime > 0 ? moveTime + " ms" : "no limit"));
+        sb.append(String.format("  %-7s %6s %6s %6s %6s %7s %16s %8s%n",
+                "SIZE", "GAMES", "WINS", "DRAWS", "LOSSES", "SCORE", "ELO", "FORFEITS"));
+
+        int[] total = new int[3];
+        int totalForfeits = 0;
+        for (int[] size : sizes) {
+            int[] outcomes = new int[3];
+            int forfeits = 0;
+
+            for (Game game : results) {
+                if (game.width != size[0] || game.height != size[1])
+                    continue;
+
+                outcomes[game.outcome]++;
+                if (game.forfeit != null) forfeits++;
+            }
+
+            sb.append(row(size[0] + "x" + size[1], outcomes, forfeits));
+            for (int i = 0; i < 3; i++) total[i] += outcomes[i];
+            totalForfeits += forfeits;
+        }
+
+        if (sizes.length > 1)
+            sb.append(row("TOTAL", total, totalForfeits));
+
+        if (errors > 0)
+            sb.append(String.format("  %d games failed with an exception%n", errors));
+
+        sb.append(String.format("%n  %-40s %8s %8s %8s %8s %8s%n", "LATENCY (ms)", "MOVES", "P50", "P90", "P99", "MAX"));
+        sb.append(latencies(logicA, results, true));
+        sb.append(latencies(logicB, results, false));
+
+        return sb.toString();
+    }
+
+    private static String row(String name, int[] outcomes, int forfeits) {
+        int games = outcomes[WIN] + outcomes[DRAW] + outcomes[LOSS];
+        double score = games == 0 ? 0.5 : (outcomes[WIN] + outcomes[DRAW] / 2.0) / games;
+
+        return String.format("  %-7s %6d %6d %6d %6d %6.1f%% %16s %8d%n", name, games, outcomes[WIN],
+                outcomes[DRAW], outcomes[LOSS], 100 * score, elo(outcomes), forfeits);
+    }
+
+    /**
+     * Elo difference with its 95 % confidence margin, from the mean and spread of the game scores.
+     */
+    private static String elo(int[] outcomes) {
+        int games = outcomes[WIN] + outcomes[DRAW] + outcomes[LOSS];
+        if (games == 0)
+            return "-";
+
+        double score = (outcomes[WIN] + outcomes[DRAW] / 2.0) / games;
+        if (score == 0 || score == 1)
+            return score == 0 ? "-inf" : "+inf";
+
+        double variance = (outcomes[WIN] * Math.pow(1 - score, 2) + outcomes[DRAW] * Math.pow(0.5 - score, 2) +
+                outcomes[LOSS] * Math.pow(score, 2)) / games;
+        double error = 1.96 * Math.sqrt(variance / games);
+
+        double low = eloDifference(Math.max(1e-6, score - error));
+        double high = eloDifference(Math.min(1 - 1e-6, score + error));
+
+        return String.format("%+.0f +/- %.0f", eloDifference(score), (high - low) / 2);
+    }
+
+    private static double eloDifference(double score) {
+        // Adding zero turns -0 into 0
+        return -400 * Math.log10(1 / score - 1) + 0.0;
+    }
+
+    private static String latencies(String name, List<Game> results, boolean a) {
+        int count = 0;
+        for (Game game : results) {
+            count += (a ? game.latenciesA : game.latenciesB).size();
+        }
+
+        long[] latencies = new long[count];
+        int i = 0;
+        for (Game game : results) {
+            for (long latency : a ? game.latenciesA : game.latenciesB) {
+                latencies[i++] = latency;
+            }
+        }
+        Arrays.sort(latencies);
+
+        return String.format("  %-40s %8d %8.1f %8.1f %8.1f %8.1f%n", name, count, percentile(latencies, 0.5),
+                percentile(latencies, 0.9), percentile(latencies, 0.99), percentile(latencies, 1));
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0)
+            return 0;
+
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static class Game {
+        final int width, height;
+        final boolean aFirst;
+        final int[] opening;
+
+        final List<Long> latenciesA = new ArrayList<>();
+        final List<Long> latenciesB = new ArrayList<>();
+
+        // Outcome for the first logic, and why the game was forfeited if it was
+        int outcome;
+        String forfeit;
+
+        Game(int width, int height, boolean aFirst, int[] opening) {
+            this.width = width;
+            this.height = height;
+            this.aFirst = aFirst;
+            this.opening = opening;
+        }
+
+        void finish(int outcome, String forfeit) {
+            this.outcome = outcome;
+            this.forfeit = forfeit;
+        }
+    }
+}
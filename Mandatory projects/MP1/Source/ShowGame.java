@@ -29,6 +29,11 @@ public class ShowGame
      */
     public static void main(String[] args)
     {
+        // The engines print their statistics on every move for whoever watches the game
+        if(System.getProperty(MatchRunner.STATISTICS_PROPERTY) == null) {
+            System.setProperty(MatchRunner.STATISTICS_PROPERTY, "true");
+        }
+
         IGameLogic player1 = null;
         IGameLogic player2 = null;
         int cols = 7;
@@ -0,0 +1,1067 @@
+import java.util.*;
+
+/**
+ * BDD package in the style of BuDDy, keeping the nodes in flat int arrays indexed by the handles. Nodes are found
+ * again through an open-addressed unique table, operation results through a lossy cache that simply overwrites
+ * older entries. Nodes nobody references are only collected when the table runs full, by marking everything
+ * reachable from referenced nodes and from the intermediate results of the running operation. If that frees too
+ * little the table doubles.
+ *
+ * Variables are reordered by sifting, which swaps neighbouring levels by rewriting their nodes in place, so the
+ * handles stay valid.
+ *
+ * Node 0 is false and node 1 is true, both at the level after the last variable.
+ */
+public class ArrayBDDFactory implements BDDBackend {
+    private static final int FREE = -1;
+    private static final int MARK = 1 << 30;
+
+    // Nodes that are never collected, the terminals and the variables
+    private static final int PERMANENT = Integer.MAX_VALUE;
+
+    // The table grows after a collection that left less than this part of it free
+    private static final double MIN_FREE = 0.2;
+
+    // Results of each Op by (f, g) = (0, 0), (0, 1), (1, 0), (1, 1)
+    private static final int[][] TRUTH = {
+        { 0, 0, 0, 1 }, { 0, 1, 1, 1 }, { 1, 1, 1, 0 }, { 1, 0, 0, 0 },
+        { 0, 1, 1, 0 }, { 1, 0, 0, 1 }, { 1, 1, 0, 1 }, { 0, 0, 1, 0 }
+    };
+
+    private static final Op[] OPS = Op.values();
+
+    private static final int AND = Op.AND.ordinal();
+    private static final int OR = Op.OR.ordinal();
+    private static final int NOT = OPS.length;
+
+    // Restrict, exist and replace depend on their cube or pairing, so each call caches under an id of its own
+    private static final int FIRST_CALL_ID = NOT + 1;
+    private int nextCallId = FIRST_CALL_ID;
+
+    private int size;
+    private int[] levels;
+    private int[] lows;
+    private int[] highs;
+    private int[] refs;
+
+    // Free nodes are chained through their low edge
+    private int freeList;
+    private int freeCount;
+
+    private int[] unique;
+    private int uniqueMask;
+
+    private int[] cacheF, cacheG, cacheOp, cacheResult;
+    private int cacheMask;
+
+    // Intermediate results of the running operation, which a collection has to keep
+    private int[] stack = new int[64];
+    private int stackTop;
+
+    private int varNum;
+    private int[] var2Level = new int[0];
+    private int[] level2Var = new int[0];
+    private int[] varNodes = new int[0];
+    private int[] nvarNodes = new int[0];
+
+    // Per call state of restrict, exist and replace, by level
+    private int[] assignment;
+    private boolean[] quantified;
+    private int[] replacement;
+    private int lastLevel;
+
+    // Memo of the counting operations, valid for nodes whose stamp is the current one
+    private int[] stamps = new int[0];
+    private double[] counts = new double[0];
+    private int stamp;
+
+    private int collections;
+
+    // Sifting moves a variable on while the nodes stay below this factor of the fewest seen
+    private static final double MAX_GROWTH = 1.2;
+
+    // A pass of sifting moves at most this many nodes through swaps for every node live at its start, the
+    // variables with the most nodes go first as they have the most to gain
+    private static final int MAX_SIFT_WORK = 10;
+
+    // A pass is only kept if it leaves at most this part of the live nodes, otherwise the order goes back
+    private static final double MIN_GAIN = 0.9;
+
+    // Automatic sifting starts once more nodes than the threshold are live, which is checked when the nodes in use
+    // pass reorderCheck
+    private static final int FIRST_REORDER_THRESHOLD = 50000;
+
+    private boolean autoReorder;
+    private int reorderThreshold = FIRST_REORDER_THRESHOLD;
+    private int reorderCheck;
+    private int reorderings;
+
+    // While reordering: references from outside and from the parents of each node, a node is dead at zero
+    private int[] reorderRefs;
+    private int liveNodes;
+
+    // While reordering: the nodes at each level, dead ones included until they are freed
+    private int[][] levelNodes;
+    private int[] levelSizes;
+
+    // Nodes moved by the swaps of the current pass, and how many it may move
+    private long siftWork;
+    private long siftBudget;
+
+    public ArrayBDDFactory(int nodeNum, int cacheSize) {
+        size = Math.max(nodeNum, 16);
+        levels = new int[size];
+        lows = new int[size];
+        highs = new int[size];
+        refs = new int[size];
+
+        refs[0] = refs[1] = PERMANENT;
+        lows[1] = highs[1] = 1;
+
+        freeList = 0;
+        freeCount = 0;
+        for (int node = size - 1; node >= 2; node--) {
+            levels[node] = FREE;
+            lows[node] = freeList;
+            freeList = node;
+            freeCount++;
+        }
+
+        unique = new int[tableSize(size)];
+        uniqueMask = unique.length - 1;
+
+        int cacheLength = Integer.highestOneBit(Math.max(cacheSize, 16) - 1) << 1;
+        cacheF = new int[cacheLength];
+        cacheG = new int[cacheLength];
+        cacheOp = new int[cacheLength];
+        cacheResult = new int[cacheLength];
+        cacheMask = cacheLength - 1;
+        clearCache();
+    }
+
+    public String getName() {
+        return "ArrayBDD";
+    }
+
+    public void setVarNum(int num) {
+        if (num < varNum)
+            throw new IllegalArgumentException("The number of variables can not shrink");
+
+        int old = varNum;
+        varNum = num;
+        levels[0] = levels[1] = num;
+
+        var2Level = Arrays.copyOf(var2Level, num);
+        level2Var = Arrays.copyOf(level2Var, num);
+        varNodes = Arrays.copyOf(varNodes, num);
+        nvarNodes = Arrays.copyOf(nvarNodes, num);
+
+        // New variables go below the existing ones
+        for (int var = old; var < num; var++) {
+            var2Level[var] = var;
+            level2Var[var] = var;
+
+            stackTop = 0;
+            varNodes[var] = make(var, 0, 1);
+            refs[varNodes[var]] = PERMANENT;
+            nvarNodes[var] = make(var, 1, 0);
+            refs[nvarNodes[var]] = PERMANENT;
+        }
+    }
+
+    public int varNum() {
+        return varNum;
+    }
+
+    public int zero() {
+        return 0;
+    }
+
+    public int one() {
+        return 1;
+    }
+
+    public boolean isZero(int f) {
+        return f == 0;
+    }
+
+    public boolean isOne(int f) {
+        return f == 1;
+    }
+
+    public int ithVar(int var) {
+        checkVar(var);
+        return varNodes[var];
+    }
+
+    public int nithVar(int var) {
+        checkVar(var);
+        return nvarNodes[var];
+    }
+
+    private void checkVar(int var) {
+        if (var < 0 || var >= varNum)
+            throw new IllegalArgumentException("Unknown variable " + var);
+    }
+
+    public int id(int f) {
+        return ref(f);
+    }
+
+    private int ref(int f) {
+        if (refs[f] != PERMANENT) refs[f]++;
+        return f;
+    }
+
+    public void free(int f) {
+        if (refs[f] == PERMANENT)
+            return;
+
+        if (refs[f] <= 0)
+            throw new IllegalStateException("BDD " + f + " is not referenced");
+
+        refs[f]--;
+    }
+
+    public int var(int f) {
+        return level2Var[level(f)];
+    }
+
+    public int level(int f) {
+        return levels[f];
+    }
+
+    public int low(int f) {
+        return ref(lows[f]);
+    }
+
+    public int high(int f) {
+        return ref(highs[f]);
+    }
+
+    public int level2Var(int level) {
+        return level2Var[level];
+    }
+
+    public int var2Level(int var) {
+        return var2Level[var];
+    }
+
+    public int getNodeNum() {
+        return size - 2 - freeCount;
+    }
+
+    /**
+     * Number of garbage collections so far.
+     */
+    public int getCollections() {
+        return collections;
+    }
+
+    public int not(int f) {
+        startOperation();
+        return ref(notRec(f));
+    }
+
+    public int apply(int f, int g, Op op) {
+        startOperation();
+        return ref(applyRec(f, g, op.ordinal()));
+    }
+
+    public int restrict(int f, int cube) {
+        startOperation();
+        assignment = new int[varNum];
+        lastLevel = -1;
+
+        // A positive literal has a false low edge, a negated one a false high edge
+        for (int node = cube; node > 1; ) {
+            int level = levels[node];
+            lastLevel = Math.max(lastLevel, level);
+
+            if (lows[node] == 0) {
+                assignment[level] = 1;
+                node = highs[node];
+            } else {
+                assignment[level] = -1;
+                node = lows[node];
+            }
+        }
+
+        return ref(restrictRec(f, callId()));
+    }
+
+    public int exist(int f, int cube) {
+        startOperation();
+        quantified = new boolean[varNum];
+        lastLevel = -1;
+
+        for (int node = cube; node > 1; node = highs[node]) {
+            quantified[levels[node]] = true;
+            lastLevel = Math.max(lastLevel, levels[node]);
+        }
+
+        return ref(existRec(f, callId()));
+    }
+
+    public int replace(int f, int[] from, int[] to) {
+        if (from.length != to.length)
+            throw new IllegalArgumentException("Pairing of " + from.length + " to " + to.length + " variables");
+
+        startOperation();
+        replacement = new int[varNum];
+        for (int level = 0; level < varNum; level++) {
+            replacement[level] = level;
+        }
+        for (int i = 0; i < from.length; i++) {
+            checkVar(from[i]);
+            checkVar(to[i]);
+            replacement[var2Level[from[i]]] = var2Level[to[i]];
+        }
+
+        return ref(replaceRec(f, callId()));
+    }
+
+    /**
+     * Empties the stack for a new operation, sifting first if automatic reordering is on and the nodes in use have
+     * grown past the threshold. Sifting waits for operations to end, their intermediate results are not in a BDD.
+     */
+    private void startOperation() {
+        stackTop = 0;
+
+        if (autoReorder && getNodeNum() > reorderCheck) {
+            // Most of the nodes may be garbage, only the live ones count
+            collect();
+            if (getNodeNum() > reorderThreshold) reorder();
+
+            // Not every operation can afford a collection
+            reorderCheck = getNodeNum() + Math.max(reorderThreshold, size / 4);
+        }
+    }
+
+    private int callId() {
+        if (nextCallId == Integer.MAX_VALUE) {
+            clearCache();
+            nextCallId = FIRST_CALL_ID;
+        }
+
+        return nextCallId++;
+    }
+
+    public double pathCount(int f) {
+        newStamp();
+        return pathCountRec(f);
+    }
+
+    public double satCount(int f) {
+        newStamp();
+        return Math.pow(2, levels[f]) * satCountRec(f);
+    }
+
+    public int nodeCount(int f) {
+        newStamp();
+        return nodeCountRec(f);
+    }
+
+    private int notRec(int f) {
+        if (f < 2) return 1 - f;
+
+        int slot = cacheSlot(f, 0, NOT);
+        if (cacheF[slot] == f && cacheOp[slot] == NOT)
+            return cacheResult[slot];
+
+        int low = push(notRec(lows[f]));
+        int high = push(notRec(highs[f]));
+        int result = make(levels[f], low, high);
+        stackTop -= 2;
+
+        return cache(f, 0, NOT, result);
+    }
+
+    private int applyRec(int f, int g, int op) {
+        if (f < 2 && g < 2)
+            return TRUTH[op][f << 1 | g];
+
+        switch (OPS[op]) {
+            case AND:
+                if (f == 0 || g == 0) return 0;
+                if (f == 1 || f == g) return g;
+                if (g == 1) return f;
+                break;
+            case OR:
+                if (f == 1 || g == 1) return 1;
+                if (f == 0 || f == g) return g;
+                if (g == 0) return f;
+                break;
+            case NAND:
+                if (f == 0 || g == 0) return 1;
+                break;
+            case NOR:
+                if (f == 1 || g == 1) return 0;
+                break;
+            case XOR:
+                if (f == g) return 0;
+                if (f == 0) return g;
+                if (g == 0) return f;
+                break;
+            case BIIMP:
+                if (f == g) return 1;
+                if (f == 1) return g;
+                if (g == 1) return f;
+                break;
+            case IMP:
+                if (f == 0 || g == 1 || f == g) return 1;
+                if (f == 1) return g;
+                break;
+            case DIFF:
+                if (f == 0 || g == 1 || f == g) return 0;
+                if (g == 0) return f;
+                break;
+        }
+
+        // All but implication and difference are commutative, so one order is enough for the cache
+        if (f > g && op != Op.IMP.ordinal() && op != Op.DIFF.ordinal()) {
+            int t = f;
+            f = g;
+            g = t;
+        }
+
+        int slot = cacheSlot(f, g, op);
+        if (cacheF[slot] == f && cacheG[slot] == g && cacheOp[slot] == op)
+            return cacheResult[slot];
+
+        int levelF = levels[f], levelG = levels[g];
+        int level = Math.min(levelF, levelG);
+
+        int low = push(applyRec(levelF == level ? lows[f] : f, levelG == level ? lows[g] : g, op));
+        int high = push(applyRec(levelF == level ? highs[f] : f, levelG == level ? highs[g] : g, op));
+        int result = make(level, low, high);
+        stackTop -= 2;
+
+        return cache(f, g, op, result);
+    }
+
+    private int restrictRec(int f, int callId) {
+        if (f < 2 || levels[f] > lastLevel)
+            return f;
+
+        int slot = cacheSlot(f, 0, callId);
+        if (cacheF[slot] == f && cacheOp[slot] == callId)
+            return cacheResult[slot];
+
+        int level = levels[f];
+        int result;
+        if (assignment[level] > 0) {
+            result = restrictRec(highs[f], callId);
+        } else if (assignment[level] < 0) {
+            result = restrictRec(lows[f], callId);
+        } else {
+            int low = push(restrictRec(lows[f], callId));
+            int high = push(restrictRec(highs[f], callId));
+            result = make(level, low, high);
+            stackTop -= 2;
+        }
+
+        return cache(f, 0, callId, result);
+    }
+
+    private int existRec(int f, int callId) {
+        if (f < 2 || levels[f] > lastLevel)
+            return f;
+
+        int slot = cacheSlot(f, 0, callId);
+        if (cacheF[slot] == f && cacheOp[slot] == callId)
+            return cacheResult[slot];
+
+        int level = levels[f];
+        int low = push(existRec(lows[f], callId));
+        int high = push(existRec(highs[f], callId));
+        int result = quantified[level] ? applyRec(low, high, OR) : make(level, low, high);
+        stackTop -= 2;
+
+        return cache(f, 0, callId, result);
+    }
+
+    private int replaceRec(int f, int callId) {
+        if (f < 2)
+            return f;
+
+        int slot = cacheSlot(f, 0, callId);
+        if (cacheF[slot] == f && cacheOp[slot] == callId)
+            return cacheResult[slot];
+
+        int low = push(replaceRec(lows[f], callId));
+        int high = push(replaceRec(highs[f], callId));
+        int level = replacement[levels[f]];
+
+        // The new variable may come below the children, then it has to be moved down into them
+        int result;
+        if (level < levels[low] && level < levels[high]) {
+            result = make(level, low, high);
+        } else {
+            int onHigh = push(applyRec(varNodes[level2Var[level]], high, AND));
+            int onLow = push(applyRec(nvarNodes[level2Var[level]], low, AND));
+            result = applyRec(onHigh, onLow, OR);
+            stackTop -= 2;
+        }
+        stackTop -= 2;
+
+        return cache(f, 0, callId, result);
+    }
+
+    private double pathCountRec(int f) {
+        if (f < 2) return f;
+        if (stamps[f] == stamp) return counts[f];
+
+        stamps[f] = stamp;
+        return counts[f] = pathCountRec(lows[f]) + pathCountRec(highs[f]);
+    }
+
+    private double satCountRec(int f) {
+        if (f < 2) return f;
+        if (stamps[f] == stamp) return counts[f];
+
+        int low = lows[f], high = highs[f];
+        double count = Math.pow(2, levels[low] - levels[f] - 1) * satCountRec(low) +
+                Math.pow(2, levels[high] - levels[f] - 1) * satCountRec(high);
+
+        stamps[f] = stamp;
+        return counts[f] = count;
+    }
+
+    private int nodeCountRec(int f) {
+        if (f < 2 || stamps[f] == stamp) return 0;
+
+        stamps[f] = stamp;
+        return 1 + nodeCountRec(lows[f]) + nodeCountRec(highs[f]);
+    }
+
+    private void newStamp() {
+        if (stamps.length < size) {
+            stamps = new int[size];
+            counts = new double[size];
+            stamp = 0;
+        }
+
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+
+    public void setVarOrder(int[] order) {
+        if (order.length != varNum)
+            throw new IllegalArgumentException("Order of " + order.length + " variables for " + varNum);
+
+        boolean[] seen = new boolean[varNum];
+        for (int var : order) {
+            checkVar(var);
+            if (seen[var])
+                throw new IllegalArgumentException("Variable " + var + " appears twice in the order");
+            seen[var] = true;
+        }
+
+        startReorder();
+        moveToOrder(order);
+        endReorder();
+    }
+
+    private void moveToOrder(int[] order) {
+        for (int level = 0; level < varNum; level++) {
+            while (var2Level[order[level]] > level) {
+                swap(var2Level[order[level]] - 1);
+            }
+        }
+    }
+
+    /**
+     * Sifts the variables, as many as the work allowed for a pass takes. Leaves the order as it was if that does
+     * not shrink the live nodes by enough to be worth it.
+     */
+    public void reorder() {
+        reorderings++;
+        startReorder();
+
+        int start = liveNodes;
+        int[] order = level2Var.clone();
+        siftWork = 0;
+        siftBudget = (long) MAX_SIFT_WORK * Math.max(start, varNum);
+
+        // The variables with the most nodes first, they have the most to gain
+        Integer[] vars = new Integer[varNum];
+        for (int var = 0; var < varNum; var++) {
+            vars[var] = var;
+        }
+        int[] sizes = levelSizes.clone();
+        Arrays.sort(vars, (a, b) -> sizes[var2Level[b]] - sizes[var2Level[a]]);
+
+        for (int var : vars) {
+            if (siftWork > siftBudget) break;
+
+            sift(var);
+            removeDead();
+        }
+
+        if (liveNodes > MIN_GAIN * start) {
+            moveToOrder(order);
+            removeDead();
+        }
+
+        endReorder();
+        reorderThreshold = Math.max(FIRST_REORDER_THRESHOLD, 2 * getNodeNum());
+    }
+
+    public boolean canSift() {
+        return true;
+    }
+
+    public void setAutoReorder(boolean enabled) {
+        autoReorder = enabled;
+        reorderCheck = reorderThreshold;
+    }
+
+    /**
+     * Number of times the variables were sifted, on request or automatically.
+     */
+    public int getReorderings() {
+        return reorderings;
+    }
+
+    /**
+     * Moves the variable through all levels, towards the nearer end first, and back to where the fewest nodes
+     * were alive. A direction is given up once the nodes grow too far beyond the fewest seen, and both once the
+     * pass has used up its work.
+     */
+    private void sift(int var) {
+        int level = var2Level[var];
+        int best = liveNodes;
+        int bestLevel = level;
+
+        for (int pass = 0; pass < 2; pass++) {
+            boolean down = (pass == 0) == (level < varNum / 2);
+
+            while ((down ? level < varNum - 1 : level > 0) && siftWork <= siftBudget) {
+                if (down) swap(level++);
+                else swap(--level);
+
+                if (liveNodes < best) {
+                    best = liveNodes;
+                    bestLevel = level;
+                } else if (liveNodes > MAX_GROWTH * best) {
+                    break;
+                }
+            }
+        }
+
+        while (level < bestLevel) swap(level++);
+        while (level > bestLevel) swap(--level);
+    }
+
+    /**
+     * Collects the garbage and counts the references to every node, which swap keeps up to date from then on.
+     */
+    private void startReorder() {
+        stackTop = 0;
+        collect();
+
+        reorderRefs = new int[size];
+        levelNodes = new int[varNum][];
+        levelSizes = new int[varNum];
+        liveNodes = 0;
+
+        for (int level = 0; level < varNum; level++) {
+            levelNodes[level] = new int[16];
+        }
+
+        for (int node = 2; node < size; node++) {
+            if (levels[node] == FREE) continue;
+
+            liveNodes++;
+            addToLevel(levels[node], node);
+
+            if (refs[node] > 0) reorderRefs[node]++;
+            reorderRefs[lows[node]]++;
+            reorderRefs[highs[node]]++;
+        }
+    }
+
+    private void endReorder() {
+        reorderRefs = null;
+        levelNodes = null;
+        levelSizes = null;
+
+        // Frees the nodes that died, and the cache refers to nodes by their old levels
+        collect();
+    }
+
+    /**
+     * Swaps the variables at the level and the one below, keeping the handles of all nodes. A node of the upper
+     * variable x with children on the lower variable y is rebuilt in place as a y node over new x nodes, the
+     * others just change level.
+     */
+    private void swap(int level) {
+        int below = level + 1;
+        int x = level2Var[level], y = level2Var[below];
+
+        int[] upper = levelNodes[level];
+        int upperSize = levelSizes[level];
+        int[] lower = levelNodes[below];
+        int lowerSize = levelSizes[below];
+        siftWork += upperSize + lowerSize;
+
+        // Every x node makes at most two new ones, the table must not grow while the levels are in between
+        if (freeCount < 2 * upperSize)
+            grow(Math.max(2 * size, size + 2 * upperSize));
+
+        // Dead nodes already left the unique table
+        for (int i = 0; i < upperSize; i++) {
+            if (reorderRefs[upper[i]] > 0) uniqueRemove(upper[i]);
+        }
+        for (int i = 0; i < lowerSize; i++) {
+            if (reorderRefs[lower[i]] > 0) uniqueRemove(lower[i]);
+        }
+
+        // Split the x nodes while the y nodes still show by their level
+        int[] rebuilt = new int[upperSize];
+        int rebuiltSize = 0;
+        levelNodes[below] = new int[Math.max(16, upperSize)];
+        levelSizes[below] = 0;
+
+        for (int i = 0; i < upperSize; i++) {
+            int node = upper[i];
+            if (reorderRefs[node] == 0) {
+                freeNode(node);
+            } else if (levels[lows[node]] == below || levels[highs[node]] == below) {
+                rebuilt[rebuiltSize++] = node;
+            } else {
+                levels[node] = below;
+                uniqueInsert(node);
+                addToLevel(below, node);
+            }
+        }
+
+        levelNodes[level] = new int[Math.max(16, lowerSize + rebuiltSize)];
+        levelSizes[level] = 0;
+        for (int i = 0; i < lowerSize; i++) {
+            levels[lower[i]] = level;
+        }
+
+        for (int i = 0; i < rebuiltSize; i++) {
+            int node = rebuilt[i];
+            int low = lows[node], high = highs[node];
+
+            // The y nodes are at the upper level by now
+            int lowLow = levels[low] == level ? lows[low] : low;
+            int lowHigh = levels[low] == level ? highs[low] : low;
+            int highLow = levels[high] == level ? lows[high] : high;
+            int highHigh = levels[high] == level ? highs[high] : high;
+
+            lows[node] = makeReordered(below, lowLow, highLow);
+            highs[node] = makeReordered(below, lowHigh, highHigh);
+            deref(low, level);
+            deref(high, level);
+        }
+
+        // The y nodes no x node points to any more died with the swap
+        for (int i = 0; i < lowerSize; i++) {
+            int node = lower[i];
+            if (reorderRefs[node] == 0) {
+                freeNode(node);
+            } else {
+                uniqueInsert(node);
+                addToLevel(level, node);
+            }
+        }
+        for (int i = 0; i < rebuiltSize; i++) {
+            uniqueInsert(rebuilt[i]);
+            addToLevel(level, rebuilt[i]);
+        }
+
+        level2Var[level] = y;
+        level2Var[below] = x;
+        var2Level[x] = below;
+        var2Level[y] = level;
+    }
+
+    /**
+     * Node with the level and edges during a swap, counting the new reference to it. The edges are live.
+     */
+    private int makeReordered(int level, int low, int high) {
+        if (low == high) {
+            refNode(low);
+            return low;
+        }
+
+        int slot = findSlot(level, low, high);
+        if (unique[slot] != 0) {
+            refNode(unique[slot]);
+            return unique[slot];
+        }
+
+        int node = freeList;
+        freeList = lows[node];
+        freeCount--;
+
+        levels[node] = level;
+        lows[node] = low;
+        highs[node] = high;
+        refs[node] = 0;
+        reorderRefs[node] = 1;
+        liveNodes++;
+
+        refNode(low);
+        refNode(high);
+        unique[slot] = node;
+        addToLevel(level, node);
+
+        return node;
+    }
+
+    private void refNode(int node) {
+        if (node >= 2) reorderRefs[node]++;
+    }
+
+    /**
+     * Drops a reference to the node, and the references of its edges if it was the last one. A dead node leaves
+     * the unique table at once so it is never found again, and is freed with the next pass over its level. The
+     * nodes at the level being swapped are out of the table already.
+     */
+    private void deref(int node, int swapLevel) {
+        if (node < 2) return;
+
+        if (--reorderRefs[node] == 0) {
+            liveNodes--;
+            if (levels[node] != swapLevel) uniqueRemove(node);
+
+            deref(lows[node], swapLevel);
+            deref(highs[node], swapLevel);
+        }
+    }
+
+    private void removeDead() {
+        for (int level = 0; level < varNum; level++) {
+            int[] nodes = levelNodes[level];
+            int kept = 0;
+
+            for (int i = 0; i < levelSizes[level]; i++) {
+                int node = nodes[i];
+                if (reorderRefs[node] == 0) {
+                    freeNode(node);
+                } else {
+                    nodes[kept++] = node;
+                }
+            }
+
+            levelSizes[level] = kept;
+        }
+    }
+
+    private void freeNode(int node) {
+        levels[node] = FREE;
+        lows[node] = freeList;
+        freeList = node;
+        freeCount++;
+    }
+
+    private void addToLevel(int level, int node) {
+        if (levelSizes[level] == levelNodes[level].length)
+            levelNodes[level] = Arrays.copyOf(levelNodes[level], 2 * levelSizes[level]);
+
+        levelNodes[level][levelSizes[level]++] = node;
+    }
+
+    private void uniqueInsert(int node) {
+        unique[findSlot(levels[node], lows[node], highs[node])] = node;
+    }
+
+    /**
+     * Removes the node from the unique table, moving later nodes of the probe sequence back into the gap.
+     */
+    private void uniqueRemove(int node) {
+        int hole = hash(levels[node], lows[node], highs[node]) & uniqueMask;
+        while (unique[hole] != node) hole = (hole + 1) & uniqueMask;
+
+        for (int slot = (hole + 1) & uniqueMask; unique[slot] != 0; slot = (slot + 1) & uniqueMask) {
+            int other = unique[slot];
+            int home = hash(levels[other], lows[other], highs[other]) & uniqueMask;
+
+            // The node may fill the hole unless its home lies after the hole, up to its slot
+            boolean between = hole <= slot ? home > hole && home <= slot : home > hole || home <= slot;
+            if (!between) {
+                unique[hole] = other;
+                hole = slot;
+            }
+        }
+
+        unique[hole] = 0;
+    }
+
+    private int push(int node) {
+        if (stackTop == stack.length) stack = Arrays.copyOf(stack, 2 * stackTop);
+        stack[stackTop++] = node;
+        return node;
+    }
+
+    /**
+     * Returns the node with the level and edges, creating it if there is none yet.
+     */
+    private int make(int level, int low, int high) {
+        if (low == high)
+            return low;
+
+        int slot = findSlot(level, low, high);
+        if (unique[slot] != 0)
+            return unique[slot];
+
+        if (freeCount == 0) {
+            push(low);
+            push(high);
+            collect();
+            stackTop -= 2;
+
+            // The unique table was rebuilt
+            slot = findSlot(level, low, high);
+        }
+
+        int node = freeList;
+        freeList = lows[node];
+        freeCount--;
+
+        levels[node] = level;
+        lows[node] = low;
+        highs[node] = high;
+        refs[node] = 0;
+        unique[slot] = node;
+
+        return node;
+    }
+
+    /**
+     * Slot of the node in the unique table, or the empty slot it would go into.
+     */
+    private int findSlot(int level, int low, int high) {
+        int slot = hash(level, low, high) & uniqueMask;
+        while (true) {
+            int node = unique[slot];
+            if (node == 0 || levels[node] == level && lows[node] == low && highs[node] == high)
+                return slot;
+
+            slot = (slot + 1) & uniqueMask;
+        }
+    }
+
+    private static int hash(int a, int b, int c) {
+        int h = a * 0x9E3779B1 + b * 0x85EBCA77 + c * 0xC2B2AE3D;
+        h ^= h >>> 16;
+        h *= 0x7FEB352D;
+        return h ^ (h >>> 15);
+    }
+
+    private int cacheSlot(int f, int g, int op) {
+        return hash(f, g, op) & cacheMask;
+    }
+
+    private int cache(int f, int g, int op, int result) {
+        // The slot is found again, a collection during the operation may have resized the cache
+        int slot = cacheSlot(f, g, op);
+        cacheF[slot] = f;
+        cacheG[slot] = g;
+        cacheOp[slot] = op;
+        cacheResult[slot] = result;
+
+        return result;
+    }
+
+    private void clearCache() {
+        Arrays.fill(cacheOp, -1);
+    }
+
+    /**
+     * Frees the nodes that can not be reached from referenced nodes or the stack, and grows the table if that
+     * frees too little of it.
+     */
+    private void collect() {
+        collections++;
+
+        for (int node = 2; node < size; node++) {
+            if (levels[node] != FREE && refs[node] > 0) mark(node);
+        }
+        for (int i = 0; i < stackTop; i++) {
+            mark(stack[i]);
+        }
+
+        freeList = 0;
+        freeCount = 0;
+        Arrays.fill(unique, 0);
+
+        for (int node = size - 1; node >= 2; node--) {
+            if (levels[node] != FREE && (levels[node] & MARK) != 0) {
+                levels[node] &= ~MARK;
+                unique[findSlot(levels[node], lows[node], highs[node])] = node;
+            } else {
+                levels[node] = FREE;
+                lows[node] = freeList;
+                freeList = node;
+                freeCount++;
+            }
+        }
+
+        // Cached results may be among the freed nodes
+        clearCache();
+
+        if (freeCount < size * MIN_FREE)
+            grow(2 * size);
+    }
+
+    private void mark(int node) {
+        if (node < 2 || (levels[node] & MARK) != 0)
+            return;
+
+        levels[node] |= MARK;
+        mark(lows[node]);
+        mark(highs[node]);
+    }
+
+    private void grow(int newSize) {
+        int oldSize = size;
+        size = newSize;
+
+        levels = Arrays.copyOf(levels, size);
+        lows = Arrays.copyOf(lows, size);
+        highs = Arrays.copyOf(highs, size);
+        refs = Arrays.copyOf(refs, size);
+        if (reorderRefs != null) reorderRefs = Arrays.copyOf(reorderRefs, size);
+
+        for (int node = size - 1; node >= oldSize; node--) {
+            levels[node] = FREE;
+            lows[node] = freeList;
+            freeList = node;
+            freeCount++;
+        }
+
+        unique = new int[tableSize(size)];
+        uniqueMask = unique.length - 1;
+        for (int node = 2; node < size; node++) {
+            // Nodes that died in a reordering stay out of the table
+            if (levels[node] != FREE && (reorderRefs == null || reorderRefs[node] > 0))
+                unique[findSlot(levels[node], lows[node], highs[node])] = node;
+        }
+
+        // The cache keeps a quarter of the nodes' size
+        if (cacheF.length < size / 4) {
+            int cacheLength = Integer.highestOneBit(size / 4 - 1) << 1;
+            cacheF = new int[cacheLength];
+            cacheG = new int[cacheLength];
+            cacheOp = new int[cacheLength];
+            cacheResult = new int[cacheLength];
+            cacheMask = cacheLength - 1;
+            clearCache();
+        }
+    }
+
+    /**
+     * Unique table length for the nodes, a power of two at least twice their number so probes stay short.
+     */
+    private static int tableSize(int nodes) {
+        return Integer.highestOneBit(2 * nodes - 1) << 1;
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * BDD package the queens logic works with, in the style of BuDDy: BDDs are int handles rather than objects. Every
+ * handle an operation returns holds a reference the caller gives back with free, the handles passed in are left
+ * alone. Equal functions always get equal handles, as long as they are referenced.
+ *
+ * ArrayBDDFactory is the package's own implementation, JavaBDDBackend runs the same operations on JavaBDD's
+ * JFactory. The system property queens.bdd picks one of them, "array" or "javabdd".
+ */
+public interface BDDBackend {
+    enum Op {
+        AND, OR, NAND, NOR, XOR, BIIMP, IMP, DIFF
+    }
+
+    static BDDBackend create(int nodeNum, int cacheSize) {
+        String name = System.getProperty("queens.bdd", "array");
+
+        switch (name) {
+            case "array":
+                return new ArrayBDDFactory(nodeNum, cacheSize);
+            case "javabdd":
+                return new JavaBDDBackend(nodeNum, cacheSize);
+            default:
+                throw new IllegalArgumentException("Unknown BDD package " + name);
+        }
+    }
+
+    String getName();
+
+    void setVarNum(int num);
+
+    int varNum();
+
+    int zero();
+
+    int one();
+
+    boolean isZero(int f);
+
+    boolean isOne(int f);
+
+    int ithVar(int var);
+
+    int nithVar(int var);
+
+    /**
+     * Takes another reference to f, to be freed separately.
+     */
+    int id(int f);
+
+    void free(int f);
+
+    int var(int f);
+
+    /**
+     * Position of f's variable in the order, the number of variables for the terminals.
+     */
+    int level(int f);
+
+    int low(int f);
+
+    int high(int f);
+
+    int level2Var(int level);
+
+    int var2Level(int var);
+
+    /**
+     * Sets the order of the variables, order[level] being the variable at the level. Handles stay valid.
+     */
+    void setVarOrder(int[] order);
+
+    /**
+     * Reorders the variables to make the BDDs in use smaller, by sifting where the package can: each variable is
+     * moved through all levels and left at the one where there are the fewest nodes. The package may keep the
+     * order it had if reordering gains too little. Handles stay valid.
+     */
+    void reorder();
+
+    /**
+     * Whether reorder sifts. A package that can not sift reorders with the best method it has.
+     */
+    boolean canSift();
+
+    /**
+     * Lets the package sift the variables on its own whenever the nodes in use have grown a lot. Only packages
+     * that can sift support it, the others throw an IllegalStateException when it is turned on.
+     */
+    void setAutoReorder(boolean enabled);
+
+    int not(int f);
+
+    int apply(int f, int g, Op op);
+
+    /**
+     * Sets the variables of the cube, a conjunction of literals, to true if they appear positive and to false if
+     * they appear negated.
+     */
+    int restrict(int f, int cube);
+
+    /**
+     * Quantifies the variables of the cube, a conjunction of positive literals, existentially.
+     */
+    int exist(int f, int cube);
+
+    /**
+     * Renames each variable from[i] to to[i].
+     */
+    int replace(int f, int[] from, int[] to);
+
+    double pathCount(int f);
+
+    double satCount(int f);
+
+    int nodeCount(int f);
+
+    /**
+     * Nodes in use, referenced or not yet collected.
+     */
+    int getNodeNum();
+
+    default int and(int f, int g) {
+        return apply(f, g, Op.AND);
+    }
+
+    default int or(int f, int g) {
+        return apply(f, g, Op.OR);
+    }
+
+    // The With variants free both arguments, like JavaBDD's
+
+    default int andWith(int f, int g) {
+        return applyWith(f, g, Op.AND);
+    }
+
+    default int orWith(int f, int g) {
+        return applyWith(f, g, Op.OR);
+    }
+
+    default int applyWith(int f, int g, Op op) {
+        int result = apply(f, g, op);
+        free(f);
+        free(g);
+        return result;
+    }
+
+    default int restrictWith(int f, int cube) {
+        int result = restrict(f, cube);
+        free(f);
+        free(cube);
+        return result;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Builds the N-Queens rule of QueensLogic with each BDD package, variable order and reordering and compares the
+ * time it takes, with the size of the rule and the largest it got while it was built. The solutions are counted to
+ * check the runs agree.
+ *
+ * Usage: BDDBenchmark [from [to]], the board sizes to run, 8 to 14 by default. The properties queens.bdd,
+ * queens.order and queens.reorder limit the runs to comma separated lists of the values QueensLogic takes, all of
+ * them by default. Runs a package does not support are listed with the reason.
+ */
+public class BDDBenchmark {
+    private static final String PACKAGES = "array,javabdd";
+    private static final String ORDERS = "row,column,diagonal,interleaved";
+    private static final String REORDERS = "none,sift";
+
+    public static void main(String[] args) {
+        int from = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int to = args.length > 1 ? Integer.parseInt(args[1]) : 14;
+
+        String[] packages = System.getProperty("queens.bdd", PACKAGES).split(",");
+        String[] orders = System.getProperty("queens.order", ORDERS).split(",");
+        String[] reorders = System.getProperty("queens.reorder", REORDERS).split(",");
+
+        System.out.printf("%3s %-8s %-12s %-7s %10s %12s %10s %10s%n", "n", "package", "order", "reorder", "ms",
+                "solutions", "nodes", "peak");
+
+        for (int n = from; n <= to; n++) {
+            for (String name : packages) {
+                for (String order : orders) {
+                    for (String reorder : reorders) {
+                        System.setProperty("queens.bdd", name);
+                        System.setProperty("queens.order", order);
+                        System.setProperty("queens.reorder", reorder);
+                        QueensLogic logic = new QueensLogic();
+
+                        long start = System.nanoTime();
+                        try {
+                            logic.initializeGame(n);
+                        } catch (IllegalArgumentException e) {
+                            // Not every package can sift
+                            System.out.printf("%3d %-8s %-12s %-7s %s%n", n, name, order, reorder, e.getMessage());
+                            continue;
+                        }
+                        long elapsed = (System.nanoTime() - start) / 1000000;
+
+                        System.out.printf("%3d %-8s %-12s %-7s %10d %12.0f %10d %10d%n", n, name, order, reorder,
+                                elapsed, logic.getSolutionCount(), logic.getNodeCount(), logic.getPeakNodeCount());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Queens logic without BDDs: a cell stays open if a backtracking search finds a solution with the queens placed
+ * and a queen on the cell. The columns and both diagonals in use are kept as bitmasks, and the search always
+ * continues in the row with the fewest open cells, giving up as soon as a row has none left.
+ *
+ * Each solution found opens all its cells at once, so most cells need no search of their own. A search splits
+ * over the cells of its first row on the common fork-join pool, and all its tasks stop once one finds a solution.
+ * Both diagonals have to fit in a long, which allows boards of up to 32 rows.
+ */
+public class BitsetQueensLogic implements IQueensLogic {
+    public static final int MAX_SIZE = 32;
+
+    private int n;
+    private int[][] board;
+
+    // Column of the queen in each row, -1 for rows without one
+    private int[] queens;
+
+    public void initializeGame(int size) {
+        if (size < 1 || size > MAX_SIZE)
+            throw new IllegalArgumentException("Boards of 1 to " + MAX_SIZE + " rows, not " + size);
+
+        this.n      = size;
+        this.board  = new int[n][n];
+        this.queens = new int[n];
+        Arrays.fill(queens, -1);
+
+        updateBoard();
+    }
+
+    public int[][] getGameBoard() {
+        return board;
+    }
+
+    public boolean insertQueen(int x, int y) {
+        if (board[x][y] != 0) return false;
+
+        board[x][y] = 1;
+        queens[y] = x;
+        updateBoard();
+
+        // With a single solution left its queens are the only open cells, one in each empty row
+        boolean single = true;
+        for (int j = 0; j < n && single; j++) {
+            int open = 0;
+            for (int i = 0; i < n; i++) {
+                if (board[i][j] == 0) open++;
+            }
+            single = queens[j] >= 0 || open == 1;
+        }
+
+        if (single) {
+            for (int j = 0; j < n; j++) {
+                for (int i = 0; i < n; i++) {
+                    board[i][j] = board[i][j] == 0 ? 1 : board[i][j];
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Closes the open cells no solution goes through any more.
+     */
+    private void updateBoard() {
+        boolean[][] solved = new boolean[n][n];
+
+        for (int y = 0; y < n; y++) {
+            for (int x = 0; x < n; x++) {
+                if (board[x][y] != 0 || solved[x][y]) continue;
+
+                int[] columns = queens.clone();
+                columns[y] = x;
+
+                int[] solution = attacked(x, y) ? null : solve(columns);
+                if (solution == null) {
+                    board[x][y] = -1;
+                    continue;
+                }
+
+                for (int row = 0; row < n; row++) {
+                    solved[solution[row]][row] = true;
+                }
+            }
+        }
+    }
+
+    private boolean attacked(int x, int y) {
+        if (queens[y] >= 0) return true;
+
+        for (int row = 0; row < n; row++) {
+            int column = queens[row];
+            if (column >= 0 && (column == x || Math.abs(column - x) == Math.abs(row - y))) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Completes the queens in the columns, none of which attack each other, to a solution. Returns the columns of
+     * the solution or null if there is none.
+     */
+    private int[] solve(int[] columns) {
+        long free = 0, used = 0, up = 0, down = 0;
+        for (int y = 0; y < n; y++) {
+            int x = columns[y];
+            if (x < 0) {
+                free |= 1L << y;
+            } else {
+                used |= 1L << x;
+                up   |= 1L << (x + y);
+                down |= 1L << (x - y + n - 1);
+            }
+        }
+
+        if (free == 0) return columns;
+
+        int row = constrainedRow(free, used, up, down);
+        if (row < 0) return null;
+
+        // One task for each cell of the row, the first solution stops the others
+        AtomicReference<int[]> found = new AtomicReference<int[]>();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+        for (long cells = openCells(row, used, up, down); cells != 0; cells &= cells - 1) {
+            int x = Long.numberOfTrailingZeros(cells);
+            int[] copy = columns.clone();
+            copy[row] = x;
+
+            long rest = free & ~(1L << row);
+            long taskUsed = used | 1L << x;
+            long taskUp   = up | 1L << (x + row);
+            long taskDown = down | 1L << (x - row + n - 1);
+
+            tasks.add(() -> {
+                if (search(copy, rest, taskUsed, taskUp, taskDown, found)) found.compareAndSet(null, copy);
+                return null;
+            });
+        }
+
+        ForkJoinPool.commonPool().invokeAll(tasks);
+        return found.get();
+    }
+
+    /**
+     * Places queens in the free rows, the one with the fewest open cells first. Gives up once another task has
+     * found a solution.
+     */
+    private boolean search(int[] columns, long free, long used, long up, long down, AtomicReference<int[]> found) {
+        if (free == 0) return true;
+        if (found.get() != null) return false;
+
+        int row = constrainedRow(free, used, up, down);
+        if (row < 0) return false;
+
+        for (long cells = openCells(row, used, up, down); cells != 0; cells &= cells - 1) {
+            int x = Long.numberOfTrailingZeros(cells);
+            columns[row] = x;
+
+            if (search(columns, free & ~(1L << row), used | 1L << x, up | 1L << (x + row),
+                    down | 1L << (x - row + n - 1), found))
+                return true;
+        }
+
+        columns[row] = -1;
+        return false;
+    }
+
+    /**
+     * The free row with the fewest open cells, or -1 if one of them has none.
+     */
+    private int constrainedRow(long free, long used, long up, long down) {
+        int best = -1;
+        int bestCount = Integer.MAX_VALUE;
+
+        for (long rows = free; rows != 0; rows &= rows - 1) {
+            int y = Long.numberOfTrailingZeros(rows);
+            int count = Long.bitCount(openCells(y, used, up, down));
+
+            if (count == 0) return -1;
+            if (count < bestCount) {
+                best = y;
+                bestCount = count;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Columns of the row no queen attacks. Diagonal up holds x + y, diagonal down x - y + n - 1.
+     */
+    private long openCells(int y, long used, long up, long down) {
+        long all = (1L << n) - 1;
+        return all & ~used & ~(up >>> y) & ~(down >>> (n - 1 - y));
+    }
+}
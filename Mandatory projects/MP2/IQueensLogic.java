@@ -0,0 +1,36 @@
+/**
+ * Game logic of the N-Queens puzzle as the GUI uses it. Cells of the board hold 0 while a queen can still be
+ * placed there, 1 for a queen and -1 for a cell no solution with the queens placed so far leaves open.
+ *
+ * QueensLogic decides the cells with a BDD of all solutions, BitsetQueensLogic by backtracking search, which
+ * takes far less memory on large boards. The system property queens.logic picks one of them, "bdd" or "bitset".
+ */
+public interface IQueensLogic {
+    static IQueensLogic create() {
+        String name = System.getProperty("queens.logic", "bdd");
+
+        switch (name) {
+            case "bdd":
+                return new QueensLogic();
+            case "bitset":
+                return new BitsetQueensLogic();
+            default:
+                throw new IllegalArgumentException("Unknown queens logic " + name);
+        }
+    }
+
+    /**
+     * Starts a new game on an empty board of size by size cells.
+     */
+    void initializeGame(int size);
+
+    /**
+     * The board indexed by column and row.
+     */
+    int[][] getGameBoard();
+
+    /**
+     * Places a queen on the cell if it is still open, and returns whether it was.
+     */
+    boolean insertQueen(int x, int y);
+}
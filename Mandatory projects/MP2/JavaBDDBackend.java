@@ -0,0 +1,223 @@
+import java.lang.reflect.Method;
+import java.util.*;
+import net.sf.javabdd.*;
+
+/**
+ * BDDBackend on JavaBDD's JFactory. Each distinct BDD is kept as one JavaBDD object with a count of the handles
+ * given out for it, so equal BDDs share a handle as they do in ArrayBDDFactory.
+ */
+public class JavaBDDBackend implements BDDBackend {
+    private static final BDDFactory.BDDOp[] OPS = {
+        BDDFactory.and, BDDFactory.or, BDDFactory.nand, BDDFactory.nor,
+        BDDFactory.xor, BDDFactory.biimp, BDDFactory.imp, BDDFactory.diff
+    };
+
+    // JFactory's sifting fails on variable blocks, the iterated permutation of three neighbours is the best that works.
+    // It is too slow to run on its own while a BDD is built, taking seconds for the 9 queens rule, so only reorder
+    // uses it
+    private static final BDDFactory.ReorderMethod REORDER_METHOD = BDDFactory.REORDER_WIN3ITE;
+
+    private final BDDFactory fact;
+
+    private final Map<BDD, Integer> handles = new HashMap<BDD, Integer>();
+    private final List<BDD> bdds = new ArrayList<BDD>();
+    private int[] refs = new int[16];
+    private final Deque<Integer> freeHandles = new ArrayDeque<Integer>();
+
+    private boolean blocks;
+
+    public JavaBDDBackend(int nodeNum, int cacheSize) {
+        this.fact = JFactory.init(nodeNum, cacheSize);
+
+        // JFactory reports every collection, resize and reordering on System.out unless someone else listens
+        try {
+            Method ignore = JavaBDDBackend.class.getDeclaredMethod("ignore");
+            ignore.setAccessible(true);
+
+            fact.registerGCCallback(this, ignore);
+            fact.registerResizeCallback(this, ignore);
+            fact.registerReorderCallback(this, ignore);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void ignore() {
+    }
+
+    public String getName() {
+        return "JavaBDD " + fact.getVersion();
+    }
+
+    public void setVarNum(int num) {
+        fact.setVarNum(num);
+    }
+
+    public int varNum() {
+        return fact.varNum();
+    }
+
+    /**
+     * Returns the handle of the BDD, taking over the reference of the object.
+     */
+    private int handle(BDD bdd) {
+        Integer handle = handles.get(bdd);
+        if (handle != null) {
+            bdd.free();
+            refs[handle]++;
+            return handle;
+        }
+
+        int h;
+        if (freeHandles.isEmpty()) {
+            h = bdds.size();
+            bdds.add(bdd);
+            if (h == refs.length) refs = Arrays.copyOf(refs, 2 * h);
+        } else {
+            h = freeHandles.pop();
+            bdds.set(h, bdd);
+        }
+
+        handles.put(bdd, h);
+        refs[h] = 1;
+        return h;
+    }
+
+    private BDD bdd(int f) {
+        return bdds.get(f);
+    }
+
+    public int zero() {
+        return handle(fact.zero());
+    }
+
+    public int one() {
+        return handle(fact.one());
+    }
+
+    public boolean isZero(int f) {
+        return bdd(f).isZero();
+    }
+
+    public boolean isOne(int f) {
+        return bdd(f).isOne();
+    }
+
+    public int ithVar(int var) {
+        return handle(fact.ithVar(var));
+    }
+
+    public int nithVar(int var) {
+        return handle(fact.nithVar(var));
+    }
+
+    public int id(int f) {
+        refs[f]++;
+        return f;
+    }
+
+    public void free(int f) {
+        if (--refs[f] > 0)
+            return;
+
+        BDD bdd = bdds.set(f, null);
+        handles.remove(bdd);
+        bdd.free();
+        freeHandles.push(f);
+    }
+
+    public int var(int f) {
+        return bdd(f).var();
+    }
+
+    public int level(int f) {
+        BDD bdd = bdd(f);
+        return bdd.isZero() || bdd.isOne() ? fact.varNum() : bdd.level();
+    }
+
+    public int low(int f) {
+        return handle(bdd(f).low());
+    }
+
+    public int high(int f) {
+        return handle(bdd(f).high());
+    }
+
+    public int level2Var(int level) {
+        return fact.level2Var(level);
+    }
+
+    public int var2Level(int var) {
+        return fact.var2Level(var);
+    }
+
+    public void setVarOrder(int[] order) {
+        // JFactory refuses to set the order across blocks
+        if (blocks) {
+            fact.clearVarBlocks();
+            blocks = false;
+        }
+
+        fact.setVarOrder(order);
+    }
+
+    public void reorder() {
+        defineBlocks();
+        fact.reorder(REORDER_METHOD);
+    }
+
+    public boolean canSift() {
+        return false;
+    }
+
+    public void setAutoReorder(boolean enabled) {
+        if (enabled)
+            throw new IllegalStateException("JFactory can not sift variables in blocks");
+    }
+
+    private void defineBlocks() {
+        // JFactory only moves variables that are in blocks
+        if (!blocks) {
+            fact.varBlockAll();
+            blocks = true;
+        }
+    }
+
+    public int not(int f) {
+        return handle(bdd(f).not());
+    }
+
+    public int apply(int f, int g, Op op) {
+        return handle(bdd(f).apply(bdd(g), OPS[op.ordinal()]));
+    }
+
+    public int restrict(int f, int cube) {
+        return handle(bdd(f).restrict(bdd(cube)));
+    }
+
+    public int exist(int f, int cube) {
+        return handle(bdd(f).exist(bdd(cube)));
+    }
+
+    public int replace(int f, int[] from, int[] to) {
+        BDDPairing pairing = fact.makePair();
+        pairing.set(from, to);
+        return handle(bdd(f).replace(pairing));
+    }
+
+    public double pathCount(int f) {
+        return bdd(f).pathCount();
+    }
+
+    public double satCount(int f) {
+        return bdd(f).satCount();
+    }
+
+    public int nodeCount(int f) {
+        return bdd(f).nodeCount();
+    }
+
+    public int getNodeNum() {
+        return fact.getNodeNum();
+    }
+}
@@ -14,7 +14,8 @@ public class QueensGUI extends JComponent implements MouseListener
 	final static long serialVersionUID = 1234567890;
 	private int 		chosenColumn;	// The value of the last column chosen by the user.
     private int         chosenRow;   // The value of the last row chosen by the user.
-	private QueensLogic 	logic;			
+	private IQueensLogic 	logic;			
+	private double		scale = 1;		// Large boards are drawn smaller to fit the window
 	
 	// Images for drawing the board
 	private Image 		part, queen, invalid, backgroundW, backgroundB;
@@ -24,7 +25,7 @@ public class QueensGUI extends JComponent implements MouseListener
 	/**
 	 * @param logic The implementation of the game logic  
 	 */
-	public QueensGUI(QueensLogic logic)
+	public QueensGUI(IQueensLogic logic)
 	{
 		part = Toolkit.getDefaultToolkit().getImage("imgs/maze.png");
 		queen = Toolkit.getDefaultToolkit().getImage("imgs/queen.png");
@@ -56,6 +57,10 @@ public class QueensGUI extends JComponent implements MouseListener
 		int[][] gameboard = logic.getGameBoard();
 		int cols = gameboard.length;
 		int rows = gameboard[0].length;
+
+		int side = Math.min(getWidth() - in.left - in.right, getHeight() - in.top - in.bottom);
+		if (side > 0) scale = Math.min(1, side / (200.0 + 100 * cols));
+		((Graphics2D) g).scale(scale, scale);
 		
         //draw borders
         for (int i = 0;i<cols;i++) {
@@ -96,8 +101,8 @@ public class QueensGUI extends JComponent implements MouseListener
 	 * column and row is kept and parsed to the logic. 
 	 */
 	public void mouseClicked(MouseEvent e){
-        chosenColumn = e.getX()/100 - 1;
-        chosenRow = e.getY()/100 - 1;
+        chosenColumn = (int) (e.getX()/scale)/100 - 1;
+        chosenRow = (int) (e.getY()/scale)/100 - 1;
         
         //this method connects the UI with the logic
         int size = logic.getGameBoard().length;
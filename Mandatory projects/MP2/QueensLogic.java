@@ -1,44 +1,70 @@
 import java.util.*;
 import java.math.BigInteger;
-import net.sf.javabdd.*;
 
-public class QueensLogic {
+/**
+ * The system property queens.order picks the order of the cell variables in the BDD: "row" by rows, the default,
+ * "column" by columns, "diagonal" by the diagonals running up to the right, or "interleaved" with the bits of the
+ * row and column interleaved, so nearby cells come together. With queens.reorder set to "sift" the BDD package
+ * sifts the variables on its own while the rule is built, which only ArrayBDDFactory can.
+ */
+public class QueensLogic implements IQueensLogic {
     private int total;
     private int n;
     private int[][] board;
 
-    private BDDFactory fact;
-    private BDD queenRule;
+    private BDDBackend bdd;
+    private int queenRule;
+    private int peakNodeCount;
 
     public void initializeGame(int size) {
         this.total = size*size;
         this.n     = size;
         this.board = new int[n][n];
 
-        this.fact = JFactory.init(2000000, 200000);
-        fact.setVarNum(total);
+        this.bdd = BDDBackend.create(2000000, 200000);
+        bdd.setVarNum(total);
+        bdd.setVarOrder(variableOrder(System.getProperty("queens.order", "row")));
 
-        buildQueenRule();
+        String reorder = System.getProperty("queens.reorder", "none");
+        if (!reorder.equals("none") && !reorder.equals("sift"))
+            throw new IllegalArgumentException("Unknown reordering " + reorder);
+        if (reorder.equals("sift") && !bdd.canSift())
+            throw new IllegalArgumentException(bdd.getName() + " can not sift");
+
+        bdd.setAutoReorder(reorder.equals("sift"));
         buildBoardRules();
+        bdd.setAutoReorder(false);
+
+        updateBoard();
     }
 
-    public int[][] getGameBoard() {
-        for (int y = 0; y < n; y++) {
-            for (int x = 0; x < n; x++) {
-                BDD r = queenRule.restrict(var(x, y));
-                if (r.isZero()) board[x][y] = -1;
-            }
-        }
+    /**
+     * Size of the queen rule after the rows that made it largest while it was built.
+     */
+    public int getPeakNodeCount() {
+        return peakNodeCount;
+    }
 
+    public int getNodeCount() {
+        return bdd.nodeCount(queenRule);
+    }
+
+    public double getSolutionCount() {
+        return bdd.satCount(queenRule);
+    }
+
+    public int[][] getGameBoard() {
         return board;
     }
 
     public boolean insertQueen(int x, int y) {
         if (board[x][y] != 0) return false;
 
-        queenRule.restrictWith(var(x, y));
+        queenRule = bdd.restrictWith(queenRule, var(x, y));
+        board[x][y] = 1;
+        updateBoard();
 
-        if (queenRule.pathCount() == 1) {
+        if (bdd.pathCount(queenRule) == 1) {
             for (int j = 0; j < n; j++) {
                 for (int i = 0; i < n; i++) {
                     board[i][j] = board[i][j] == 0 ? 1 : board[i][j];
@@ -46,91 +72,176 @@ public class QueensLogic {
             }
         }
 
-        board[x][y] = 1;
         return true;
     }
 
-    private int index(int x, int y) {
-        return y*n + x;
-    }
+    /**
+     * Marks the cells no queen can be placed on any more. The board is only updated when a queen is placed, so
+     * getGameBoard costs nothing however often the GUI repaints.
+     */
+    private void updateBoard() {
+        boolean[] placeable = placeableVariables();
 
-    private BDD var(int x, int y) {
-        return fact.ithVar(index(x, y));
+        for (int y = 0; y < n; y++) {
+            for (int x = 0; x < n; x++) {
+                if (board[x][y] == 0 && !placeable[index(x, y)]) board[x][y] = -1;
+            }
+        }
     }
 
-    private void buildBoardRules() {
-        BDD we   = fact.one(),
-            ns   = fact.one(),
-            nwse = fact.one(),
-            nesw = fact.one();
+    /**
+     * Finds the variables that are true in some solution, in one pass over the nodes of the queen rule. Every node
+     * but zero lies on a path to one, so a variable can be true if a path takes the high edge of one of its
+     * nodes, or skips its level and leaves it free.
+     */
+    private boolean[] placeableVariables() {
+        boolean[] placeable = new boolean[total];
+        if (bdd.isZero(queenRule)) return placeable;
+
+        // Levels skipped by some path are marked as ranges, start +1 and end -1
+        int[] skipped = new int[total + 1];
+        skipped[0]++;
+        skipped[bdd.level(queenRule)]--;
+
+        Set<Integer> visited = new HashSet<Integer>();
+        Deque<Integer> stack = new ArrayDeque<Integer>();
+        stack.push(bdd.id(queenRule));
+
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            if (bdd.isOne(node) || !visited.add(node)) {
+                bdd.free(node);
+                continue;
+            }
 
-        for (int y = 0; y < n; y++) {
-            for (int x = 0; x < n; x++) {
-                int delta;
+            int level = bdd.level(node);
+            int low   = bdd.low(node);
+            int high  = bdd.high(node);
 
-                // Add W->E rule
-                for (int i = 0; i < n; i++) {
-                    if (i == x) continue;
+            if (!bdd.isZero(high)) placeable[bdd.level2Var(level)] = true;
 
-                    BDD var  = var(x, y);
-                    BDD that = var(i, y);
-                    we.andWith(var.apply(that, BDDFactory.nand));
+            for (int child : new int[] { low, high }) {
+                if (bdd.isZero(child)) {
+                    bdd.free(child);
+                    continue;
                 }
 
-                // Add N->S rule
-                for (int i = 0; i < n; i++) {
-                    if (i == y) continue;
+                skipped[level + 1]++;
+                skipped[bdd.level(child)]--;
+                stack.push(child);
+            }
+        }
 
-                    BDD var  = var(x, y);
-                    BDD that = var(x, i);
-                    ns.andWith(var.apply(that, BDDFactory.nand));
-                }
+        for (int node : visited) bdd.free(node);
 
-                // Add NW->SE rule
-                delta = Math.min(x, y);
-                for (int i = 0; i < n - Math.abs(x - y); i++) {
-                    int dx = x - delta + i;
-                    int dy = y - delta + i;
+        int count = 0;
+        for (int level = 0; level < total; level++) {
+            count += skipped[level];
+            if (count > 0) placeable[bdd.level2Var(level)] = true;
+        }
 
-                    if (dx == x && dy == y) continue;
+        return placeable;
+    }
 
-                    BDD var  = var(x, y);
-                    BDD that = var(dx, dy);
-                    nwse.andWith(var.apply(that, BDDFactory.nand));
-                }
+    /**
+     * The variables of the cells in the named order, the first at the top of the BDD.
+     */
+    private int[] variableOrder(String name) {
+        Integer[] cells = new Integer[total];
+        for (int i = 0; i < total; i++) {
+            cells[i] = i;
+        }
 
-                // Add NE->SW rule
-                delta = Math.min(n - x - 1, y);
-                for (int i = 0; i < n - Math.abs(n - x - y - 1); i++) {
-                    int dx = x + delta - i;
-                    int dy = y - delta + i;
+        Comparator<Integer> order;
+        switch (name) {
+            case "row":
+                order = Comparator.comparingInt(cell -> cell);
+                break;
+            case "column":
+                order = Comparator.comparingInt(cell -> cell % n * n + cell / n);
+                break;
+            case "diagonal":
+                order = Comparator.comparingInt(cell -> (cell % n + cell / n) * n + cell / n);
+                break;
+            case "interleaved":
+                order = Comparator.comparingInt(cell -> interleave(cell % n, cell / n));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown variable order " + name);
+        }
+        Arrays.sort(cells, order);
 
-                    if (dx == x && dy == y) continue;
+        int[] vars = new int[total];
+        for (int i = 0; i < total; i++) {
+            vars[i] = cells[i];
+        }
+        return vars;
+    }
 
-                    BDD var  = var(x, y);
-                    BDD that = var(dx, dy);
-                    nesw.andWith(var.apply(that, BDDFactory.nand));
-                }
-            }
+    /**
+     * Z-order of the cell, the bits of y and x taken in turns from the lowest.
+     */
+    private static int interleave(int x, int y) {
+        int z = 0;
+        for (int bit = 0; bit < 16; bit++) {
+            z |= (x >> bit & 1) << 2 * bit;
+            z |= (y >> bit & 1) << 2 * bit + 1;
         }
+        return z;
+    }
+
+    private int index(int x, int y) {
+        return y*n + x;
+    }
 
-        we.andWith(ns);
-        nwse.andWith(we);
-        nesw.andWith(nwse);
-        queenRule.andWith(nesw);
+    private int var(int x, int y) {
+        return bdd.ithVar(index(x, y));
     }
 
-    private void buildQueenRule() {
-        queenRule = fact.one();
+    private int notVar(int x, int y) {
+        return bdd.nithVar(index(x, y));
+    }
 
-        for (int y = 0; y < n; y++) {
-            BDD rowRule = fact.zero();
+    /**
+     * Builds the rule from the last row up. Each row adds that one of its cells holds a queen, no other cell of
+     * the row does and neither do the cells the queen attacks in the rows below, so every pair of cells is
+     * constrained once, from the upper one. As the rows below are already in the rule, it only ever holds valid
+     * placements on the bottom rows, which keeps it far smaller than conjoining whole lines across the board.
+     */
+    private void buildBoardRules() {
+        queenRule = bdd.one();
+        peakNodeCount = 0;
+
+        for (int y = n - 1; y >= 0; y--) {
+            int rowRule = bdd.zero();
 
             for (int x = 0; x < n; x++) {
-                rowRule.orWith(var(x, y));
+                rowRule = bdd.orWith(rowRule, buildQueenRule(x, y));
             }
 
-            queenRule.andWith(rowRule);
+            queenRule = bdd.andWith(queenRule, rowRule);
+            peakNodeCount = Math.max(peakNodeCount, bdd.nodeCount(queenRule));
+        }
+    }
+
+    /**
+     * The queen on the cell as the only one in its row, with the cells it attacks in the rows below empty.
+     */
+    private int buildQueenRule(int x, int y) {
+        int rule = var(x, y);
+
+        for (int i = 0; i < n; i++) {
+            if (i != x) rule = bdd.andWith(rule, notVar(i, y));
         }
+
+        for (int j = y + 1; j < n; j++) {
+            int d = j - y;
+
+            rule = bdd.andWith(rule, notVar(x, j));
+            if (x - d >= 0) rule = bdd.andWith(rule, notVar(x - d, j));
+            if (x + d < n)  rule = bdd.andWith(rule, notVar(x + d, j));
+        }
+
+        return rule;
     }
 }
@@ -7,16 +7,16 @@ import javax.swing.*;
 
 public class ShowBoard {
 	public static void main(String[] arg) {
-		QueensLogic l = new QueensLogic();
+		IQueensLogic l = IQueensLogic.create();
 		
-		int size = 8;
+		int size = arg.length > 0 ? Integer.parseInt(arg[0]) : 8;
 		l.initializeGame(size);
 
 		QueensGUI g = new QueensGUI(l);
 
 		// Setup of the frame containing the game
 		JFrame f = new JFrame();
-		f.setSize(200 + size * 100, 200 + size * 100);
+		f.setSize(Math.min(200 + size * 100, 1000), Math.min(200 + size * 100, 1000));
 		f.setTitle("Queens Problem");
 		f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		f.getContentPane().add(g);